@@ -0,0 +1,96 @@
+package benchmarks;
+
+import hitboxes.ArcHitBox;
+import hitboxes.CircleHitBox;
+import hitboxes.CollisionLine;
+import hitboxes.HitBoxPoint;
+import hitboxes.PolygonHitBox;
+import java.util.concurrent.TimeUnit;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hit box tests, both when the hit boxes overlap and when they don't.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitBoxBenchmark {
+
+  private PolygonHitBox polygon;
+  private PolygonHitBox touchingPolygon;
+  private PolygonHitBox farPolygon;
+  private ArcHitBox arc;
+  private CircleHitBox touchingCircle;
+  private CircleHitBox farCircle;
+  private CollisionLine line;
+  private HitBoxPoint leftOfLine;
+  private HitBoxPoint rightOfLine;
+
+  @Setup
+  public void setUp() {
+    polygon = regularPolygon(500, 500, 100, 8);
+    touchingPolygon = regularPolygon(580, 500, 40, 6);
+    farPolygon = regularPolygon(900, 900, 40, 6);
+    arc = new ArcHitBox(500, 500, 100, Math.PI, 0);
+    touchingCircle = new CircleHitBox(560, 500, 15);
+    farCircle = new CircleHitBox(900, 900, 15);
+    line = new CollisionLine(new HitBoxPoint(100, 100), new HitBoxPoint(200, 300));
+    leftOfLine = new HitBoxPoint(50, 200);
+    rightOfLine = new HitBoxPoint(300, 200);
+  }
+
+  @Benchmark
+  public Double polygonDeflectionTouching() {
+    return polygon.getDeflectionAngle(touchingPolygon);
+  }
+
+  @Benchmark
+  public Double polygonDeflectionApart() {
+    return polygon.getDeflectionAngle(farPolygon);
+  }
+
+  @Benchmark
+  public Double arcDeflectionTouching() {
+    return arc.getDeflectionAngle(touchingCircle);
+  }
+
+  @Benchmark
+  public Double arcDeflectionApart() {
+    return arc.getDeflectionAngle(farCircle);
+  }
+
+  @Benchmark
+  public boolean lineLeftOfPoint() {
+    return line.isRightOfPoint(leftOfLine);
+  }
+
+  @Benchmark
+  public boolean lineRightOfPoint() {
+    return line.isRightOfPoint(rightOfLine);
+  }
+
+  private static PolygonHitBox regularPolygon(double centerX, double centerY, double radius,
+      int sides) {
+    //The points are relative to the center, the hit box moves them into place
+    ObservableList<HitBoxPoint> points = FXCollections.observableArrayList();
+    for (int i = 0; i < sides; i++) {
+      double angle = 2 * Math.PI * i / sides;
+      points.add(new HitBoxPoint(radius * Math.cos(angle), radius * Math.sin(angle)));
+    }
+    return new PolygonHitBox(centerX, centerY, points);
+  }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utilities.Vector;
+
+/**
+ * The Vector operations the old physics ran for every particle every tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorBenchmark {
+
+  //Not final, so the JIT can't fold them into constants
+  private double magnitude = 3.5;
+  private double angle = 1.2;
+  private double x = 2.5;
+  private double y = -1.5;
+  private Vector velocity;
+  private Vector gravity;
+
+  @Setup
+  public void setUp() {
+    velocity = new Vector(magnitude, angle);
+    gravity = new Vector(0.1, -Math.PI / 2);
+  }
+
+  @Benchmark
+  public Vector construct() {
+    return new Vector(magnitude, angle);
+  }
+
+  @Benchmark
+  public Vector constructFromXandY() {
+    return Vector.vectorFromXandY(x, y);
+  }
+
+  @Benchmark
+  public Vector findResultant() {
+    return velocity.findResultant(gravity, 7.25);
+  }
+
+  @Benchmark
+  public Vector normalize() {
+    return velocity.normalize();
+  }
+}
@@ -0,0 +1,71 @@
+package simulation;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One tick of particle-particle collisions. This lives in the simulation package because
+ * ParticlePhysics is package-private.
+ *
+ * <p>Collisions push the particles apart, so every invocation starts from the same packed
+ * positions. Copying them back is O(n) and is included in the time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+
+  private static final double RADIUS = 5;
+
+  @Param({"100", "1000", "10000"})
+  private int particleCount;
+
+  private ParticleStore store;
+  private ParticlePhysics physics;
+  private double[] startX;
+  private double[] startY;
+  private double[] startVx;
+  private double[] startVy;
+
+  @Setup
+  public void setUp() {
+    //Same density at every size, with particles touching about half of the time
+    double side = Math.sqrt(particleCount) * RADIUS * 3;
+    Random random = new Random(42);
+    store = new ParticleStore(particleCount);
+    for (int i = 0; i < particleCount; i++) {
+      store.add(RADIUS + random.nextDouble() * side, RADIUS + random.nextDouble() * side,
+          random.nextDouble() * 2 - 1, random.nextDouble() * 2 - 1, RADIUS,
+          EdgeHandling.BOUND, true);
+    }
+    physics = new ParticlePhysics(new World(store, 1920, 1050));
+    startX = store.getX().clone();
+    startY = store.getY().clone();
+    startVx = store.getVx().clone();
+    startVy = store.getVy().clone();
+  }
+
+  @Benchmark
+  public ParticleStore handleCollisions() {
+    System.arraycopy(startX, 0, store.getX(), 0, particleCount);
+    System.arraycopy(startY, 0, store.getY(), 0, particleCount);
+    System.arraycopy(startVx, 0, store.getVx(), 0, particleCount);
+    System.arraycopy(startVy, 0, store.getVy(), 0, particleCount);
+    physics.handleCollisions();
+    return store;
+  }
+}
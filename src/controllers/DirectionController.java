@@ -2,6 +2,11 @@ package controllers;
 
 import static utilities.Run.sceneController;
 
+import hitboxes.CircleHitBox;
+import hitboxes.HitBox;
+import hitboxes.HitBoxPoint;
+import hitboxes.PolygonHitBox;
+import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
@@ -9,20 +14,26 @@ import javafx.scene.control.Slider;
 import javafx.scene.control.ToggleButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.shape.Circle;
+import javafx.scene.paint.Color;
 import javafx.scene.shape.Line;
+import javafx.scene.shape.Polygon;
+import javafx.scene.shape.Shape;
 import javafx.scene.text.Text;
+import simulation.EdgeHandling;
+import simulation.SpawnPattern;
+import simulation.UniformGravity;
+import simulation.WorldSnapshot;
 import utilities.Controller;
-import utilities.GravityParticle;
 import utilities.Vector;
 
 public class DirectionController extends Controller {
 
-  public static double windowWidth = 1920;
-  public static double windowHeight = 1050;
   private static double gravityScale = 1000;
-  private static double maxVelocity;        //Caps the particles' speed, determines color
-  private static Vector gravityVector;      //Used to calculate particles' velocities
-  private static double friction;           //Used as a percent "energy loss" on collisions
+  private static double obstacleSize = 50;  //Half the width of a new obstacle
+  private final UniformGravity gravity = new UniformGravity();
+  private double maxVelocity;   //Caps the particles' speed, determines color
+  private Vector gravityVector; //What gravity is set to, for display
+  private double friction;      //Used as a percent "energy loss" on collisions
 
   //Setup objects used by DirectionController.fxml
   public Circle gravityBounds;
@@ -38,6 +49,9 @@ public class DirectionController extends Controller {
   public Text frictionText;
   public Text radiusText;
   public ComboBox borderModeChoices;
+  public ComboBox spawnPatternChoices;
+  public ComboBox spawnCountChoices;
+  public ComboBox touchModeChoices;
   public ToggleButton funButton;
   public ToggleButton collisionButton;
   public Button clearButton;
@@ -47,10 +61,13 @@ public class DirectionController extends Controller {
   private double dragStartX;
   private double dragStartY;
   private double particleRadius;
-  private GravityParticle.EdgeHandling edgeHandling;
+  private EdgeHandling edgeHandling;
   private boolean doCollisions;
+  private TouchMode touchMode;
+  private HitBox selectedObstacle;
 
   public DirectionController() {
+    world.setGravity(gravity);
   }
 
   @Override
@@ -58,25 +75,22 @@ public class DirectionController extends Controller {
     borderModeChoices.getItems().clear();
     borderModeChoices.getItems().addAll("Bounce", "Wrap", "Bound");
     borderModeChoices.setValue("Bounce");
+    spawnPatternChoices.getItems().setAll("Grid", "Disk", "Ring", "Random");
+    spawnPatternChoices.setValue("Grid");
+    spawnCountChoices.getItems().setAll("100", "1000", "10000", "100000");
+    spawnCountChoices.setValue("1000");
+    touchModeChoices.getItems().setAll("Add Particles", "Add Round Obstacle",
+        "Add Square Obstacle", "Move Obstacle");
+    touchModeChoices.setValue("Add Particles");
 
     reset();
   }
 
   @Override
-  public Vector getGravityVector(GravityParticle particle) {
+  public Vector getGravityVector(double x, double y) {
     return gravityVector;
   }
 
-  @Override
-  public double getMaxVelocity() {
-    return maxVelocity;
-  }
-
-  @Override
-  public double getFriction() {
-    return friction;
-  }
-
   /**
    * Upon clicking inside gravityBounds, modify gravityLine and gravityVector representing gravity.
    *
@@ -102,6 +116,7 @@ public class DirectionController extends Controller {
   @FXML
   private void setMaxVelocity() {
     maxVelocity = maxVelocitySlider.getValue() / gravityScale;
+    world.setMaxVelocity(maxVelocity);
     velocityText.setText(String.format("%.3f", maxVelocity));
   }
 
@@ -111,6 +126,7 @@ public class DirectionController extends Controller {
     if (funButton.isSelected()) {
       friction += -1;
     }
+    world.setFriction(friction);
     frictionText.setText(String.format("%.3f%c", friction * 100, '%'));
   }
 
@@ -118,9 +134,8 @@ public class DirectionController extends Controller {
   private void setParticleRadius() {
     particleRadius = radiusSlider.getValue();
     radiusText.setText(String.format("%.0f", particleRadius));
-    for (GravityParticle particle : particles) {
-      particle.setRadius(particleRadius);
-    }
+    double radius = particleRadius;
+    editParticles(() -> particles.setRadius(radius));
   }
 
   @Override
@@ -129,13 +144,21 @@ public class DirectionController extends Controller {
     if (!(dragStartX > 90 && dragStartX < 240 && dragStartY > 90 && dragStartY < 240)) {
       double x = event.getSceneX();
       double y = event.getSceneY();
-      GravityParticle particle = new GravityParticle(x, y, particleRadius,
-          edgeHandling, doCollisions, this);
-      addGravityParticle(particle);
-      particles.add(particle);
+      addGravityParticle(x, y, particleRadius, edgeHandling, doCollisions, new Vector(0, 0));
     }
   }
 
+  /**
+   * Adds the chosen number of particles in the chosen pattern, all at once.
+   */
+  @FXML
+  private void spawnPattern() {
+    SpawnPattern pattern =
+        SpawnPattern.valueOf(((String) spawnPatternChoices.getValue()).toUpperCase());
+    int count = Integer.parseInt((String) spawnCountChoices.getValue());
+    spawnParticles(pattern, count, particleRadius, edgeHandling, doCollisions);
+  }
+
   /**
    * Resets gravityLine and gravityVector.
    */
@@ -161,7 +184,8 @@ public class DirectionController extends Controller {
   }
 
   /**
-   * Saves the position of the cursor at the beginning of an event.
+   * Saves the position of the cursor at the beginning of an event, and depending on touchMode,
+   * adds a particle or an obstacle there or picks the obstacle to move.
    *
    * @param event contains the cursor location, passed by the Application
    */
@@ -169,7 +193,70 @@ public class DirectionController extends Controller {
   private void setDragStartPoint(MouseEvent event) {
     dragStartX = event.getSceneX();
     dragStartY = event.getSceneY();
-    createParticle(event);
+    switch (touchMode) {
+      case ADD_ROUND_OBSTACLE:
+        selectedObstacle = new CircleHitBox(dragStartX, dragStartY, obstacleSize);
+        addObstacle(selectedObstacle, obstacleView(new Circle(obstacleSize)));
+        break;
+      case ADD_SQUARE_OBSTACLE:
+        selectedObstacle = new PolygonHitBox(dragStartX, dragStartY,
+            FXCollections.observableArrayList(
+                new HitBoxPoint(-obstacleSize, -obstacleSize),
+                new HitBoxPoint(obstacleSize, -obstacleSize),
+                new HitBoxPoint(obstacleSize, obstacleSize),
+                new HitBoxPoint(-obstacleSize, obstacleSize)));
+        addObstacle(selectedObstacle, obstacleView(new Polygon(-obstacleSize, -obstacleSize,
+            obstacleSize, -obstacleSize, obstacleSize, obstacleSize,
+            -obstacleSize, obstacleSize)));
+        break;
+      case MOVE_OBSTACLE:
+        selectedObstacle = closestObstacle(dragStartX, dragStartY);
+        break;
+      case ADD_PARTICLES:
+        createParticle(event);
+        break;
+    }
+  }
+
+  /**
+   * Adds particles, or moves the obstacle picked at the start of the drag.
+   *
+   * @param event contains the cursor location, passed by the Application
+   */
+  @FXML
+  private void handleDrag(MouseEvent event) {
+    if (touchMode == TouchMode.ADD_PARTICLES) {
+      createParticle(event);
+    } else if (selectedObstacle != null) {
+      moveObstacle(selectedObstacle, event.getSceneX(), event.getSceneY());
+    }
+  }
+
+  /**
+   * Update what to do with the cursor.
+   */
+  @FXML
+  private void setTouchMode() {
+    switch ((String) touchModeChoices.getValue()) {
+      case "Add Round Obstacle":
+        touchMode = TouchMode.ADD_ROUND_OBSTACLE;
+        break;
+      case "Add Square Obstacle":
+        touchMode = TouchMode.ADD_SQUARE_OBSTACLE;
+        break;
+      case "Move Obstacle":
+        touchMode = TouchMode.MOVE_OBSTACLE;
+        break;
+      default:
+        touchMode = TouchMode.ADD_PARTICLES;
+        break;
+    }
+  }
+
+  private static Shape obstacleView(Shape shape) {
+    shape.setFill(Color.DIMGRAY);
+    shape.setStroke(Color.BLACK);
+    return shape;
   }
 
   /**
@@ -179,26 +266,24 @@ public class DirectionController extends Controller {
   private void setBorderMode() {
     switch ((String) borderModeChoices.getValue()) {
       case "Wrap":
-        edgeHandling = GravityParticle.EdgeHandling.WRAP;
+        edgeHandling = EdgeHandling.WRAP;
         break;
       case "Bound":
-        edgeHandling = GravityParticle.EdgeHandling.BOUND;
+        edgeHandling = EdgeHandling.BOUND;
         break;
       default:
-        edgeHandling = GravityParticle.EdgeHandling.BOUNCE;
+        edgeHandling = EdgeHandling.BOUNCE;
         break;
     }
-    for (GravityParticle particle : particles) {
-      particle.setEdgeHandling(edgeHandling);
-    }
+    EdgeHandling handling = edgeHandling;
+    editParticles(() -> particles.setEdgeHandling(handling));
   }
 
   @FXML
   private void toggleCollisions() {
     doCollisions = collisionButton.isSelected();
-    for (GravityParticle particle : particles) {
-      particle.setDoCollisions(doCollisions);
-    }
+    boolean collide = doCollisions;
+    editParticles(() -> particles.setDoCollisions(collide));
   }
 
   /**
@@ -208,6 +293,8 @@ public class DirectionController extends Controller {
     double dX = gravityLine.getEndX() - gravityLine.getStartX();
     double dY = gravityLine.getEndY() - gravityLine.getStartY();
     gravityVector = Vector.vectorFromXandY(dX, -dY).scale(1 / gravityScale);
+    gravity.set(gravityVector.getxComponent(), gravityVector.getyComponent());
+    world.wakeAll();
 
     gravityText.setText(gravityVector.toString());
   }
@@ -215,6 +302,8 @@ public class DirectionController extends Controller {
   @Override
   public void reset() {
     clearParticles();
+    clearObstacles();
+    selectedObstacle = null;
 
     //Reset controls
     gravityLine.setEndX(0);
@@ -233,12 +322,59 @@ public class DirectionController extends Controller {
     setParticleRadius();
     toggleCollisions();
     setBorderMode();
+    setTouchMode();
+
+  }
+
+  @Override
+  protected void saveControls(WorldSnapshot snapshot) {
+    snapshot.setNewParticles(particleRadius, edgeHandling, doCollisions);
+  }
+
+  @Override
+  protected void loadControls(WorldSnapshot snapshot) {
+    if (snapshot.hasUniformGravity()) {
+      gravityLine.setEndX(snapshot.getGravityX() * gravityScale);
+      gravityLine.setEndY(-snapshot.getGravityY() * gravityScale);
+      gravityEndPoint.setLayoutX(gravityLine.getEndX() + gravityLine.getLayoutX());
+      gravityEndPoint.setLayoutY(gravityLine.getEndY() + gravityLine.getLayoutY());
+      updateGravityVector();
+    }
+    maxVelocitySlider.setValue(snapshot.getMaxVelocity() * gravityScale);
+    //Gaining height is stored as friction below 0
+    funButton.setSelected(snapshot.getFriction() < 0);
+    frictionSlider.setValue(snapshot.getFriction() < 0 ? snapshot.getFriction() + 1
+        : snapshot.getFriction());
+    radiusSlider.setValue(snapshot.getParticleRadius());
+    collisionButton.setSelected(snapshot.getDoCollisions());
+    switch (snapshot.getEdgeHandling()) {
+      case WRAP:
+        borderModeChoices.setValue("Wrap");
+        break;
+      case BOUND:
+        borderModeChoices.setValue("Bound");
+        break;
+      default:
+        borderModeChoices.setValue("Bounce");
+        break;
+    }
 
+    setMaxVelocity();
+    setFriction();
+    setParticleRadius();
+    toggleCollisions();
+    setBorderMode();
   }
 
   @FXML
   private void activateSourceControl() {
-    reset();
     sceneController.activate("Source Control");
   }
+
+  private enum TouchMode {
+    ADD_PARTICLES,
+    ADD_ROUND_OBSTACLE,
+    ADD_SQUARE_OBSTACLE,
+    MOVE_OBSTACLE
+  }
 }
@@ -3,6 +3,13 @@ package controllers;
 import static java.lang.Math.PI;
 import static utilities.Run.sceneController;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
@@ -11,62 +18,95 @@ import javafx.scene.control.ToggleButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.shape.Circle;
 import javafx.scene.text.Text;
+import javafx.util.Duration;
+import simulation.EdgeHandling;
+import simulation.EulerIntegrator;
+import simulation.GravityField;
+import simulation.ParticleGravitySolver;
+import simulation.ParticleMesh;
+import simulation.SourceGravity;
+import simulation.VelocityVerletIntegrator;
+import simulation.WorldSnapshot;
 import utilities.Controller;
-import utilities.GravityParticle;
-import utilities.GravityParticle.EdgeHandling;
 import utilities.Vector;
 
 public class SourceController extends Controller {
 
   public Circle gravitySource;
   public ComboBox touchModeChoices;
+  public ComboBox integratorChoices;
+  public Text substepsText;
+  public Slider substepsSlider;
+  public ComboBox warpChoices;
+  public Text warpMinutesText;
+  public Slider warpMinutesSlider;
+  public Text simulatedTimeText;
   public Text sourceMassText;
   public Slider sourceMassSlider;
   public ToggleButton collisionButton;
+  public ToggleButton particleGravityButton;
+  public ComboBox solverChoices;
+  public Text openingAngleText;
+  public Slider openingAngleSlider;
+  public Text interactionsText;
   public Button clearButton;
   public Button switchButton;
-  private double sourceMass;
+  //The names of the solvers in the same order as ParticleGravitySolver
+  private static final List<String> SOLVER_NAMES =
+      Arrays.asList("Barnes-Hut Tree", "Isolated Mesh", "Periodic Mesh");
+  //The names of the warps in the same order as WARPS
+  private static final List<String> WARP_NAMES =
+      Arrays.asList("Real Time", "10x", "100x", "As Fast as Possible");
+  private static final double[] WARPS = {1, 10, 100, Double.POSITIVE_INFINITY};
+  //The sources on the screen, in the same order as in the gravity's field
+  private final List<Source> sources = new ArrayList<>();
+  private Source selectedSource;
+  private double particleMass = 1;          //Light enough that the source still wins up close
   private double particleRadius = 15;       //Magic number that looked good
   private TouchMode touchMode;
+  //SUSTAIN, except on the periodic mesh where the particles WRAP to match it
+  private EdgeHandling edgeHandling = EdgeHandling.SUSTAIN;
   private boolean doCollisions;
   private double gravityConstant = 6.674;   //Based off of real G
   private double maxVelocity = 7.25;        //Magic number that looked good
+  private final SourceGravity gravity =
+      new SourceGravity(WINDOW_WIDTH, WINDOW_HEIGHT, gravityConstant);
+  //Shows how much work the particle gravity is doing and how far the warp has got a few times a
+  //second, while the screen is showing
+  private final Timeline statistics = new Timeline(new KeyFrame(Duration.millis(250), event -> {
+    updateInteractionsText();
+    updateWarpText();
+  }));
 
   public SourceController() {
+    world.setGravity(gravity);
+    world.setMaxVelocity(maxVelocity);
+    gravity.setParticleMass(particleMass);
+    //Softened by the radius so particles that overlap don't fling each other away
+    gravity.setSoftening(particleRadius);
+    statistics.setCycleCount(Animation.INDEFINITE);
   }
 
   @Override
-  public double getMaxVelocity() {
-    return maxVelocity;
+  public void resume() {
+    super.resume();
+    statistics.play();
   }
 
   @Override
-  public double getFriction() {
-    return 0;
-  }
-
-  /**
-   * g = (GM / r^2)<b>r</b>.
-   *
-   * @param target the target particle
-   * @return the acceleration from gravity on target
-   */
-  @Override
-  public Vector getGravityVector(GravityParticle target) {
-    Vector sourceCenter = Vector.vectorFromXandY(gravitySource.getCenterX(),
-        gravitySource.getCenterY());
-    double dX = sourceCenter.getxComponent() - target.position().getxComponent();
-    double dY = sourceCenter.getyComponent() - target.position().getyComponent();
-    Vector direction = Vector.vectorFromXandY(dX, -dY);
-    double scalar = gravityConstant * sourceMass / Math.pow(direction.getMagnitude(), 2);
-    return direction.normalize().scale(scalar);
+  public void suspend() {
+    super.suspend();
+    statistics.stop();
   }
 
   @Override
   protected void initialize() {
     touchModeChoices.getItems().clear();
-    touchModeChoices.getItems().setAll("Add Particles", "Move Source");
+    touchModeChoices.getItems().setAll("Add Particles", "Move Source", "Add Source");
     touchModeChoices.setValue("Add Particles");
+    solverChoices.getItems().setAll(SOLVER_NAMES);
+    integratorChoices.getItems().setAll("Velocity Verlet", "Euler");
+    warpChoices.getItems().setAll(WARP_NAMES);
     reset();
   }
 
@@ -74,34 +114,46 @@ public class SourceController extends Controller {
   protected void createParticle(MouseEvent event) {
     double x = event.getSceneX();
     double y = event.getSceneY();
-    GravityParticle particle = new GravityParticle(x, y, particleRadius,
-        EdgeHandling.SUSTAIN, doCollisions
-        , this);
 
-    //Set the initial velocity to create a clockwise circular orbit
-    particle.setVelocityVector(
-        getGravityVector(particle).rotate(PI / 2).normalize().scale(orbitalVelocity(particle)));
-    addGravityParticle(particle);
-    particles.add(particle);
+    //Set the initial velocity to create a clockwise circular orbit. The gravity is 0 until the
+    //simulation thread has added the sources, and then there's no orbit to start on
+    Vector gravity = getGravityVector(x, y);
+    Vector velocity = gravity.getMagnitude() > 0
+        ? gravity.rotate(PI / 2).normalize().scale(orbitalVelocity(x, y, gravity))
+        : new Vector(0, 0);
+    addGravityParticle(x, y, particleRadius, edgeHandling, doCollisions, velocity);
   }
 
   /**
-   * v = sqrt(GM / r).
+   * v = sqrt(gr), which is sqrt(GM / r) for one source. With more than one, r is the distance to
+   * the closest source.
    *
-   * @param particle the particle to find the orbital velocity of
+   * @param x the x value of the particle to find the orbital velocity of
+   * @param y the y value of the particle to find the orbital velocity of
+   * @param gravity the gravity at (x, y)
    * @return the orbital velocity
    */
-  private double orbitalVelocity(GravityParticle particle) {
-    double distance =
-        Math.sqrt(Math.pow(particle.getCenterX() - gravitySource.getCenterX(), 2) +
-            Math.pow(particle.getCenterY() - gravitySource.getCenterY(), 2));
-    return Math.sqrt(gravityConstant * sourceMass / distance);
+  private double orbitalVelocity(double x, double y, Vector gravity) {
+    Source closest = closestSource(x, y);
+    if (closest == null) {
+      return 0;
+    }
+    double distance = Math.hypot(x - closest.getX(), y - closest.getY());
+    return Math.sqrt(gravity.getMagnitude() * distance);
   }
 
+  /**
+   * Sets the mass of the selected source from the slider.
+   */
   @FXML
   private void updateSourceMass() {
-    sourceMass = sourceMassSlider.getValue();
-    sourceMassText.setText(String.format("%.0f", sourceMass));
+    double mass = sourceMassSlider.getValue();
+    sourceMassText.setText(String.format("%.0f", mass));
+    if (selectedSource != null && selectedSource.mass != mass) {
+      selectedSource.mass = mass;
+      int index = selectedSource.index;
+      editSources(field -> field.setMass(index, mass));
+    }
   }
 
   /**
@@ -116,14 +168,134 @@ public class SourceController extends Controller {
       case "Move Source":
         touchMode = TouchMode.MOVE_SOURCE;
         break;
+      case "Add Source":
+        touchMode = TouchMode.ADD_SOURCE;
+        break;
+    }
+  }
+
+  /**
+   * Velocity Verlet keeps the orbits round at much longer steps than Euler does.
+   */
+  @FXML
+  private void setIntegrator() {
+    boolean verlet = "Velocity Verlet".equals(integratorChoices.getValue());
+    world.setIntegrator(verlet ? new VelocityVerletIntegrator() : new EulerIntegrator());
+  }
+
+  /**
+   * Sets how many times a tick the particles are moved and their gravity is found.
+   */
+  @FXML
+  private void setSubsteps() {
+    int substeps = (int) Math.round(substepsSlider.getValue());
+    substepsText.setText(Integer.toString(substeps));
+    world.setSubsteps(substeps);
+  }
+
+  /**
+   * Runs the physics faster than real time for the minutes on the slider, then goes back to real
+   * time by itself.
+   */
+  @FXML
+  private void setTimeWarp() {
+    int index = WARP_NAMES.indexOf((String) warpChoices.getValue());
+    setWarp(WARPS[Math.max(index, 0)], warpMinutesSlider.getValue() * 60);
+  }
+
+  /**
+   * Sets how many minutes of simulated time to warp through. Changing it while warping warps that
+   * long from now instead.
+   */
+  @FXML
+  private void setWarpMinutes() {
+    long minutes = Math.round(warpMinutesSlider.getValue());
+    warpMinutesSlider.setValue(minutes);
+    warpMinutesText.setText(minutes + " min");
+    if (isWarping()) {
+      setTimeWarp();
+    }
+  }
+
+  /**
+   * Shows how much time has been simulated, and puts the choice back to real time once the warp
+   * is over.
+   */
+  private void updateWarpText() {
+    if (simulatedTimeText == null) {
+      return;
+    }
+    long seconds = (long) getSimulatedSeconds();
+    simulatedTimeText.setText(String.format("Simulated Time: %d:%02d", seconds / 60, seconds % 60));
+    if (!isWarping() && !WARP_NAMES.get(0).equals(warpChoices.getValue())) {
+      warpChoices.setValue(WARP_NAMES.get(0));
     }
   }
 
   @FXML
   private void toggleCollisions() {
     doCollisions = collisionButton.isSelected();
-    for (GravityParticle particle : particles) {
-      particle.setDoCollisions(doCollisions);
+    boolean collide = doCollisions;
+    editParticles(() -> particles.setDoCollisions(collide));
+  }
+
+  @FXML
+  private void toggleParticleGravity() {
+    gravity.setParticleGravity(particleGravityButton.isSelected());
+    updateEdgeHandling();
+    updateInteractionsText();
+  }
+
+  /**
+   * Sets how the particles' pull on each other is found.
+   */
+  @FXML
+  private void setSolver() {
+    int index = SOLVER_NAMES.indexOf((String) solverChoices.getValue());
+    ParticleGravitySolver solver = ParticleGravitySolver.values()[Math.max(index, 0)];
+    gravity.setSolver(solver);
+    openingAngleSlider.setDisable(solver != ParticleGravitySolver.BARNES_HUT);
+    updateEdgeHandling();
+    updateInteractionsText();
+  }
+
+  /**
+   * The periodic mesh repeats the window, so while it's pulling the particles wrap around the
+   * edges of the window to match.
+   */
+  private void updateEdgeHandling() {
+    EdgeHandling edges = gravity.hasParticleGravity()
+        && gravity.getSolver() == ParticleGravitySolver.PERIODIC_MESH
+        ? EdgeHandling.WRAP : EdgeHandling.SUSTAIN;
+    if (edges != edgeHandling) {
+      edgeHandling = edges;
+      editParticles(() -> particles.setEdgeHandling(edges));
+    }
+  }
+
+  /**
+   * Sets theta for the Barnes-Hut tree. Lower is more accurate, higher is faster.
+   */
+  @FXML
+  private void setOpeningAngle() {
+    double openingAngle = openingAngleSlider.getValue();
+    gravity.setOpeningAngle(openingAngle);
+    openingAngleText.setText(String.format("%.2f", openingAngle));
+  }
+
+  private void updateInteractionsText() {
+    if (interactionsText == null) {
+      return;
+    }
+    ParticleMesh mesh = gravity.getMesh();
+    if (gravity.hasParticleGravity() && mesh != null) {
+      interactionsText.setText(String.format("Mesh of %d x %d Points", mesh.getColumns(),
+          mesh.getRows()));
+    } else if (gravity.hasParticleGravity()) {
+      interactionsText.setText(String.format("Interactions per Particle: %.1f",
+          gravity.getAverageInteractions()));
+    } else {
+      interactionsText.setText("");
     }
   }
 
@@ -131,17 +303,31 @@ public class SourceController extends Controller {
   public void reset() {
     clearParticles();
 
-    //Reset controls
+    //Go back to the one source in the middle
+    removeSources();
+    editSources(GravityField::clearSources);
     sourceMassSlider
         .setMax(Math.pow(maxVelocity, 2) * gravitySource.getRadius() / gravityConstant);
     sourceMassSlider.setValue(sourceMassSlider.getMax() / 2);
-    gravitySource.setCenterX(960);
-    gravitySource.setCenterY(525);
+    addSource(gravitySource, 960, 525);
 
     //Run control methods for the first time
+    openingAngleSlider.setValue(0.5);
+    solverChoices.setValue(SOLVER_NAMES.get(0));
+    integratorChoices.setValue("Velocity Verlet");
+    substepsSlider.setValue(1);
+    warpChoices.setValue(WARP_NAMES.get(0));
+    warpMinutesSlider.setValue(10);
     updateSourceMass();
     setTouchMode();
+    setIntegrator();
+    setSubsteps();
+    setTimeWarp();
+    setWarpMinutes();
     toggleCollisions();
+    setOpeningAngle();
+    setSolver();
+    toggleParticleGravity();
 
   }
 
@@ -152,10 +338,21 @@ public class SourceController extends Controller {
    */
   @FXML
   private void handleTouch(MouseEvent event) {
+    boolean dragStarted = event.getEventType() == MouseEvent.DRAG_DETECTED;
     switch (touchMode) {
       case MOVE_SOURCE:
-        gravitySource.setCenterX(event.getX());
-        gravitySource.setCenterY(event.getY());
+        if (dragStarted) {
+          selectSource(closestSource(event.getX(), event.getY()));
+        }
+        moveSource(selectedSource, event.getX(), event.getY());
+        break;
+      case ADD_SOURCE:
+        //Add a source where the drag starts, and move it for the rest of the drag
+        if (dragStarted) {
+          addSource(copyOf(gravitySource), event.getX(), event.getY());
+        } else {
+          moveSource(selectedSource, event.getX(), event.getY());
+        }
         break;
       case ADD_PARTICLES:
         createParticle(event);
@@ -163,15 +360,172 @@ public class SourceController extends Controller {
     }
   }
 
+  /**
+   * Adds a source with the mass on the slider, and selects it.
+   *
+   * @param circle what to draw the source with
+   */
+  private void addSource(Circle circle, double x, double y) {
+    Source source = placeSource(circle, x, y, sourceMassSlider.getValue());
+    double mass = source.mass;
+    double radius = circle.getRadius();
+    editSources(field -> field.addSource(x, y, mass, radius));
+    selectSource(source);
+  }
+
+  /**
+   * Puts a source on the screen without adding it to the gravity.
+   */
+  private Source placeSource(Circle circle, double x, double y, double mass) {
+    Source source = new Source(circle, sources.size(), mass);
+    circle.setCenterX(x);
+    circle.setCenterY(y);
+    if (!root.getChildren().contains(circle)) {
+      //Keep the sources under the controls
+      root.getChildren().add(root.getChildren().indexOf(gravitySource) + 1, circle);
+    }
+    sources.add(source);
+    return source;
+  }
+
+  /**
+   * Takes every source but the first off of the screen, without touching the gravity.
+   */
+  private void removeSources() {
+    for (Source source : sources) {
+      if (source.circle != gravitySource) {
+        root.getChildren().remove(source.circle);
+      }
+    }
+    sources.clear();
+    selectedSource = null;
+  }
+
+  private void moveSource(Source source, double x, double y) {
+    if (source == null) {
+      return;
+    }
+    source.circle.setCenterX(x);
+    source.circle.setCenterY(y);
+    int index = source.index;
+    editSources(field -> field.moveSource(index, x, y));
+  }
+
+  /**
+   * Outlines the source, and puts its mass on the slider so the slider changes it.
+   */
+  private void selectSource(Source source) {
+    if (selectedSource != null) {
+      selectedSource.circle.setStrokeWidth(1);
+    }
+    selectedSource = source;
+    if (source != null) {
+      source.circle.setStrokeWidth(3);
+      sourceMassSlider.setValue(source.mass);
+      updateSourceMass();
+    }
+  }
+
+  private Source closestSource(double x, double y) {
+    Source closest = null;
+    double closestDistance = Double.POSITIVE_INFINITY;
+    for (Source source : sources) {
+      double distance = Math.hypot(x - source.getX(), y - source.getY());
+      if (distance < closestDistance) {
+        closest = source;
+        closestDistance = distance;
+      }
+    }
+    return closest;
+  }
+
+  /**
+   * Queues a change to the sources, and wakes the particles once it's made so they feel it.
+   */
+  private void editSources(Consumer<GravityField> edit) {
+    editParticles(() -> {
+      edit.accept(gravity.getField());
+      world.wakeAll();
+    });
+  }
+
+  private static Circle copyOf(Circle circle) {
+    Circle copy = new Circle(circle.getRadius(), circle.getFill());
+    copy.setOpacity(circle.getOpacity());
+    copy.setStroke(circle.getStroke());
+    copy.setStrokeType(circle.getStrokeType());
+    return copy;
+  }
+
+  @Override
+  protected void saveControls(WorldSnapshot snapshot) {
+    snapshot.setNewParticles(particleRadius, edgeHandling, doCollisions);
+  }
+
+  @Override
+  protected void loadControls(WorldSnapshot snapshot) {
+    if (snapshot.hasSourceGravity()) {
+      //The snapshot puts the sources back into the gravity, so they only need drawing
+      removeSources();
+      for (int i = 0; i < snapshot.getSourceCount(); i++) {
+        Circle circle = i == 0 ? gravitySource : copyOf(gravitySource);
+        circle.setRadius(snapshot.getSourceRadius(i));
+        placeSource(circle, snapshot.getSourceX(i), snapshot.getSourceY(i),
+            snapshot.getSourceMass(i));
+      }
+      if (!sources.isEmpty()) {
+        selectSource(sources.get(0));
+      }
+      particleGravityButton.setSelected(snapshot.hasParticleGravity());
+      openingAngleSlider.setValue(snapshot.getOpeningAngle());
+      solverChoices.setValue(SOLVER_NAMES.get(snapshot.getSolver().ordinal()));
+    }
+    particleRadius = snapshot.getParticleRadius();
+    collisionButton.setSelected(snapshot.getDoCollisions());
+    integratorChoices.setValue(snapshot.hasVelocityVerlet() ? "Velocity Verlet" : "Euler");
+    substepsSlider.setValue(snapshot.getSubsteps());
+
+    toggleCollisions();
+    toggleParticleGravity();
+    setOpeningAngle();
+    setSolver();
+    setIntegrator();
+    setSubsteps();
+  }
+
   @FXML
   private void activateDirectionControl() {
-    reset();
     sceneController.activate("Direction Control");
   }
 
 
   private enum TouchMode {
     ADD_PARTICLES,
-    MOVE_SOURCE
+    MOVE_SOURCE,
+    ADD_SOURCE
+  }
+
+  /**
+   * A source of gravity on the screen. Its gravity lives in gravityField, at index.
+   */
+  private static class Source {
+
+    private final Circle circle;
+    private final int index;
+    private double mass;
+
+    private Source(Circle circle, int index, double mass) {
+      this.circle = circle;
+      this.index = index;
+      this.mass = mass;
+    }
+
+    private double getX() {
+      return circle.getCenterX();
+    }
+
+    private double getY() {
+      return circle.getCenterY();
+    }
   }
 }
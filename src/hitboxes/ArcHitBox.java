@@ -1,17 +1,23 @@
 package hitboxes;
 
 import static java.lang.Math.PI;
-import static hitboxes.HitBoxPoint.distance;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+/**
+ * A slice of a circle, arcAngle wide and starting at arcAngleStart. Angles are measured from the
+ * center the same way as on the screen.
+ */
 public class ArcHitBox extends HitBox {
 
   private final double radius;
   private final double arcAngle;
-  private final HitBoxPoint centerPoint;
   private double arcAngleStart;
+  //Handed back by getHitBoxPoints, and moved on every call instead of made again
+  private final HitBoxPoint closestPoint = new HitBoxPoint(0, 0);
+  private final ObservableList<HitBoxPoint> closestPoints =
+      FXCollections.observableArrayList(closestPoint);
 
   public ArcHitBox(double centerX, double centerY, double radius, double arcAngle,
       double arcAngleStart) {
@@ -19,47 +25,104 @@ public class ArcHitBox extends HitBox {
     this.radius = radius;
     this.arcAngle = arcAngle;
     this.arcAngleStart = arcAngleStart;
-    this.centerPoint = new HitBoxPoint(centerX, centerY);
+    setBounds(centerX - radius, centerY - radius, centerX + radius, centerY + radius, radius);
   }
 
+  /**
+   * @return the angle of the arc where the first of testHitBox's points under it is, or NaN if
+   *     none are
+   */
   @Override
-  public Double getDeflectionAngle(HitBox testHitBox) {
-    for (HitBoxPoint testPoint : testHitBox.getHitBoxPoints(this)) {
-      if (underArc(testPoint)) {
-        return angleToCenter(testPoint) + PI / 2;
+  public double findDeflectionAngle(HitBox testHitBox) {
+    if (!mightTouch(testHitBox)) {
+      return Double.NaN;
+    }
+    ObservableList<HitBoxPoint> testPoints = testHitBox.getHitBoxPoints(this);
+    for (int i = 0; i < testPoints.size(); i++) {
+      double dX = testPoints.get(i).getX() - getCenterX();
+      double dY = testPoints.get(i).getY() - getCenterY();
+      //Only find the angle of points close enough to be under the arc
+      if (dX * dX + dY * dY <= radius * radius) {
+        double angle = StrictMath.atan2(dY, dX);
+        if (withinArc(angle)) {
+          return angle + PI / 2;
+        }
       }
     }
-    return null;
+    return Double.NaN;
   }
 
+  /**
+   * @return the point on the arc facing testHitBox's center, or the center if the arc doesn't face
+   *     it. The list is reused by the next call
+   */
   @Override
   public ObservableList<HitBoxPoint> getHitBoxPoints(HitBox testHitBox) {
-    double centersAngle = StrictMath.atan2(this.getCenterY() - testHitBox.getCenterY(),
-        this.getCenterX() - testHitBox.getCenterX());
-    if (centersAngle >= arcAngleStart && centersAngle <= arcAngleStart + arcAngle) {
-      HitBoxPoint hitBoxPoint = new HitBoxPoint(this.getCenterX() + radius * Math.cos(centersAngle),
+    double centersAngle = StrictMath.atan2(testHitBox.getCenterY() - this.getCenterY(),
+        testHitBox.getCenterX() - this.getCenterX());
+    if (withinArc(centersAngle)) {
+      closestPoint.set(this.getCenterX() + radius * Math.cos(centersAngle),
           this.getCenterY() + radius * Math.sin(centersAngle));
-      return FXCollections.observableArrayList(hitBoxPoint);
+    } else {
+      closestPoint.set(this.getCenterX(), this.getCenterY());
     }
-    return FXCollections.observableArrayList(getCenterPoint());
+    return closestPoints;
   }
 
-  private boolean underArc(HitBoxPoint testPoint) {
-    return angleToCenter(testPoint) >= Math.min(arcAngleStart, arcAngleStart + arcAngle) &&
-        angleToCenter(testPoint) <= Math.min(arcAngleStart, arcAngleStart + arcAngle) &&
-        distance(getCenterPoint(), testPoint) <= radius;
+  /**
+   * @return whether angle, from the center, is between the two edges of the slice
+   */
+  private boolean withinArc(double angle) {
+    return aroundArc(angle) <= Math.min(Math.abs(arcAngle), 2 * PI);
   }
 
-  private double angleToCenter(HitBoxPoint testPoint) {
-    return StrictMath.atan2(this.getCenterY() - testPoint.getY(),
-        this.getCenterX() - testPoint.getX());
+  /**
+   * @return how far around the slice angle is from its first edge, from 0 to 2 PI
+   */
+  private double aroundArc(double angle) {
+    double around = (angle - getArcStart()) % (2 * PI);
+    return around < 0 ? around + 2 * PI : around;
   }
 
-  private HitBoxPoint getCenterPoint() {
-    return new HitBoxPoint(this.getCenterX(), this.getCenterY());
+  /**
+   * @return the angle of the first edge, going around the way the angles grow
+   */
+  private double getArcStart() {
+    return arcAngle < 0 ? arcAngleStart + arcAngle : arcAngleStart;
   }
 
   public void setArcAngleStart(double angle) {
     arcAngleStart = angle % (2 * PI);
   }
+
+  protected double getRadius() {
+    return radius;
+  }
+
+  @Override
+  public double signedDistance(double x, double y) {
+    double dX = x - getCenterX();
+    double dY = y - getCenterY();
+    double distance = Math.hypot(dX, dY);
+    double width = Math.min(Math.abs(arcAngle), 2 * PI);
+    if (width >= 2 * PI) {
+      return distance - radius;
+    }
+    double start = getArcStart();
+    double toEdges = Math.min(distanceToEdge(dX, dY, start), distanceToEdge(dX, dY, start + width));
+    if (aroundArc(StrictMath.atan2(dY, dX)) > width) {
+      return toEdges;
+    } else if (distance > radius) {
+      return distance - radius;
+    }
+    return -Math.min(radius - distance, toEdges);
+  }
+
+  /**
+   * @return the distance from a point to the straight edge of the slice at angle
+   */
+  private double distanceToEdge(double dX, double dY, double angle) {
+    double along = Math.max(0, Math.min(radius, dX * Math.cos(angle) + dY * Math.sin(angle)));
+    return Math.hypot(dX - along * Math.cos(angle), dY - along * Math.sin(angle));
+  }
 }
@@ -5,6 +5,11 @@ import static java.lang.Math.PI;
 public class CircleHitBox extends ArcHitBox {
 
   public CircleHitBox(double centerX, double centerY, double radius) {
-    super(centerX, centerY, radius, 0, 2 * PI);
+    super(centerX, centerY, radius, 2 * PI, 0);
+  }
+
+  @Override
+  public double signedDistance(double x, double y) {
+    return Math.hypot(x - getCenterX(), y - getCenterY()) - getRadius();
   }
 }
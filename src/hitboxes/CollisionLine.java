@@ -12,16 +12,6 @@ public class CollisionLine {
     this.point1 = point1;
   }
 
-  private static boolean onLine(CollisionLine line, HitBoxPoint testPoint) {
-    HitBoxPoint point0 = line.getPoint0();
-    HitBoxPoint point1 = line.getPoint1();
-
-    return testPoint.getX() <= Math.max(point0.getX(), point1.getX()) &&
-        testPoint.getX() >= Math.min(point0.getX(), point1.getX()) &&
-        testPoint.getY() <= Math.max(point0.getY(), point1.getY()) &&
-        testPoint.getY() >= Math.min(point0.getY(), point1.getY());
-  }
-
   public HitBoxPoint getPoint0() {
     return point0;
   }
@@ -33,38 +23,28 @@ public class CollisionLine {
   /**
    * For reference: go to https://www.geeksforgeeks.org/how-to-check-if-a-given-point-lies-inside-a-polygon/
    *
+   * <p>Which side of the line the point is on is found from a cross product, so vertical lines
+   * don't divide by zero and nothing is allocated. For lots of points, use PolygonEdges.
+   *
    * @param testPoint - the point to test against
    * @return whether or not the line is to the right of the testPoint
    */
   public boolean isRightOfPoint(HitBoxPoint testPoint) {
-    HitBoxPoint extreme = new HitBoxPoint(testPoint.getX(), Double.POSITIVE_INFINITY);
-    PointOrientation po1 = findOrientation(point0, point1, testPoint);
-    PointOrientation po2 = findOrientation(point0, point1, extreme);
-    PointOrientation po3 = findOrientation(testPoint, extreme, point0);
-    PointOrientation po4 = findOrientation(testPoint, extreme, point1);
-
-    if (po1 != po2 && po3 != po4) {
-      return true;
-    }
-    if (onLine(testPoint)) {
-      return true;
-    } else if (onLine(new CollisionLine(testPoint, extreme), point0)) {
-      return true;
-    } else {
-      return onLine(new CollisionLine(testPoint, extreme), point1);
-    }
-  }
-
-  private PointOrientation findOrientation(HitBoxPoint p0, HitBoxPoint p1, HitBoxPoint p2) {
-    double slope1 = (p1.getY() - p0.getY()) / (p1.getX() - p0.getX());
-    double slope2 = (p2.getY() - p1.getY()) / (p2.getX() - p1.getX());
-    if (slope1 > slope2) {
-      return PointOrientation.CLOCKWISE;
-    } else if (slope1 < slope2) {
-      return PointOrientation.COUNTERCLOCKWISE;
-    } else {
-      return PointOrientation.COLINEAR;
+    double x = testPoint.getX();
+    double y = testPoint.getY();
+    if ((point0.getX() > x) != (point1.getX() > x)) {
+      double dX = point1.getX() - point0.getX();
+      double cross = (x - point0.getX()) * (point1.getY() - point0.getY())
+          - (y - point0.getY()) * dX;
+      //Whether the line passes the point's x at or past the point, without dividing by dX
+      if (dX > 0 ? cross >= 0 : cross <= 0) {
+        return true;
+      }
     }
+    //The point is on the line, or an end of the line is straight past the point
+    return onLine(testPoint)
+        || point0.getX() == x && point0.getY() >= y
+        || point1.getX() == x && point1.getY() >= y;
   }
 
   private boolean onLine(HitBoxPoint testPoint) {
@@ -86,10 +66,4 @@ public class CollisionLine {
   public double getWallAngle() {
     return StrictMath.atan2(point0.getY() - point1.getY(), point1.getX() - point0.getX());
   }
-
-  public enum PointOrientation {
-    COLINEAR,
-    CLOCKWISE,
-    COUNTERCLOCKWISE
-  }
 }
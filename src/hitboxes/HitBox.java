@@ -2,12 +2,27 @@ package hitboxes;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import simulation.Obstacle;
 
-public abstract class HitBox {
+/**
+ * A shape that things can run into. Any HitBox can be baked into an ObstacleField as an obstacle
+ * for the particles.
+ *
+ * <p>Each HitBox keeps a box and a circle around it, moved along with its center, so queries can
+ * give up on things that are nowhere near before doing any real work.
+ */
+public abstract class HitBox implements Obstacle {
 
   protected final ObservableList<HitBoxPoint> hitBoxPoints;
   protected double centerX;
   protected double centerY;
+  //The box around the shape, kept up to date by setCenterX and setCenterY
+  private double minX;
+  private double minY;
+  private double maxX;
+  private double maxY;
+  //How far from the center the shape reaches. Moving doesn't change it
+  private double boundingRadius;
 
   public HitBox(double centerX, double centerY, ObservableList<HitBoxPoint> hitBoxPoints) {
     this.hitBoxPoints = hitBoxPoints;
@@ -24,10 +39,77 @@ public abstract class HitBox {
     this.hitBoxPoints.add(new HitBoxPoint(centerX, centerY));
   }
 
-  public abstract Double getDeflectionAngle(HitBox testHitBox);
+  /**
+   * @return the angle of the surface testHitBox hit, or NaN if they haven't intersected
+   */
+  public abstract double findDeflectionAngle(HitBox testHitBox);
+
+  /**
+   * @return the angle of the surface testHitBox hit, or null if they haven't intersected
+   */
+  public Double getDeflectionAngle(HitBox testHitBox) {
+    double angle = findDeflectionAngle(testHitBox);
+    return Double.isNaN(angle) ? null : angle;
+  }
 
   public abstract ObservableList<HitBoxPoint> getHitBoxPoints(HitBox testHitBox);
 
+  /**
+   * Sets the bounds for where the shape is now. Subclasses call this once they know their shape.
+   *
+   * @param boundingRadius how far from the center the shape reaches
+   */
+  protected void setBounds(double minX, double minY, double maxX, double maxY,
+      double boundingRadius) {
+    this.minX = minX;
+    this.minY = minY;
+    this.maxX = maxX;
+    this.maxY = maxY;
+    this.boundingRadius = boundingRadius;
+  }
+
+  /**
+   * @return false if the point is definitely outside of the shape
+   */
+  public boolean mightContain(double x, double y) {
+    return x >= minX && x <= maxX && y >= minY && y <= maxY;
+  }
+
+  /**
+   * @return false if the two shapes are definitely not touching
+   */
+  public boolean mightTouch(HitBox other) {
+    double dX = other.centerX - centerX;
+    double dY = other.centerY - centerY;
+    double reach = boundingRadius + other.boundingRadius;
+    return dX * dX + dY * dY <= reach * reach
+        && other.minX <= maxX && other.maxX >= minX && other.minY <= maxY && other.maxY >= minY;
+  }
+
+  public double getBoundingRadius() {
+    return boundingRadius;
+  }
+
+  @Override
+  public double getMinX() {
+    return minX;
+  }
+
+  @Override
+  public double getMinY() {
+    return minY;
+  }
+
+  @Override
+  public double getMaxX() {
+    return maxX;
+  }
+
+  @Override
+  public double getMaxY() {
+    return maxY;
+  }
+
   public double getCenterX() {
     return centerX;
   }
@@ -35,8 +117,10 @@ public abstract class HitBox {
   public void setCenterX(double x) {
     double offsetDistance = x - this.centerX;
     this.centerX = x;
-    for (HitBoxPoint point : hitBoxPoints) {
-      point.shiftX(offsetDistance);
+    minX += offsetDistance;
+    maxX += offsetDistance;
+    for (int i = 0; i < hitBoxPoints.size(); i++) {
+      hitBoxPoints.get(i).shiftX(offsetDistance);
     }
   }
 
@@ -47,8 +131,10 @@ public abstract class HitBox {
   public void setCenterY(double y) {
     double offsetDistance = y - this.centerY;
     this.centerY = y;
-    for (HitBoxPoint point : hitBoxPoints) {
-      point.shiftY(offsetDistance);
+    minY += offsetDistance;
+    maxY += offsetDistance;
+    for (int i = 0; i < hitBoxPoints.size(); i++) {
+      hitBoxPoints.get(i).shiftY(offsetDistance);
     }
   }
 }
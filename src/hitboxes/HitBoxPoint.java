@@ -11,8 +11,9 @@ public class HitBoxPoint {
   }
 
   public static double distance(HitBoxPoint point0, HitBoxPoint point1) {
-    return Math.sqrt(
-        Math.pow(point0.getX() + point1.getX(), 2) + Math.pow(point0.getY() + point1.getY(), 2));
+    double dX = point0.getX() - point1.getX();
+    double dY = point0.getY() - point1.getY();
+    return Math.sqrt(dX * dX + dY * dY);
   }
 
   public double getX() {
@@ -23,6 +24,11 @@ public class HitBoxPoint {
     return y;
   }
 
+  void set(double x, double y) {
+    this.x = x;
+    this.y = y;
+  }
+
   public void shiftX(double shift) {
     x += shift;
   }
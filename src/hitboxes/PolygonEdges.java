@@ -0,0 +1,174 @@
+package hitboxes;
+
+import java.util.Arrays;
+
+/**
+ * The sides of a polygon packed into arrays, for testing lots of points against it at once. The
+ * points are taken a block at a time, small enough to stay in the cache, and each block walks the
+ * sides in the outer loop and the points in the inner loop. That way each side is loaded once per
+ * block instead of once per point, the inner loop is the same simple sum for every point, and
+ * nothing is allocated.
+ *
+ * <p>Everything is measured from an origin, so moving the polygon doesn't change the edges. Take
+ * the origin's new place off of the points instead.
+ */
+public final class PolygonEdges {
+
+  //How many points are tested against all the sides before moving on to the next ones
+  private static final int BLOCK = 256;
+
+  private final int count;
+  //Side i goes from (startX[i], startY[i]) to (startX[i] + sideX[i], endY[i])
+  private final double[] startX;
+  private final double[] startY;
+  private final double[] endY;
+  private final double[] sideX;
+  private final double[] sideY;
+  private final double[] sideLengthSquared;
+  //How far x moves for every step in y along each side, so nothing is divided per point. Sides
+  //that don't move in y are never crossed, so theirs doesn't matter
+  private final double[] inverseSlope;
+  //How many sides each point in the block crossed. Batches share it, so only one runs at a time
+  private final int[] crossings = new int[BLOCK];
+
+  /**
+   * @param points the corners, in order, with the last joined back to the first
+   */
+  public PolygonEdges(HitBoxPoint[] points, double originX, double originY) {
+    count = points.length;
+    startX = new double[count];
+    startY = new double[count];
+    endY = new double[count];
+    sideX = new double[count];
+    sideY = new double[count];
+    sideLengthSquared = new double[count];
+    inverseSlope = new double[count];
+    for (int i = 0; i < count; i++) {
+      HitBoxPoint next = points[(i + 1) % count];
+      startX[i] = points[i].getX() - originX;
+      startY[i] = points[i].getY() - originY;
+      endY[i] = next.getY() - originY;
+      sideX[i] = next.getX() - points[i].getX();
+      sideY[i] = next.getY() - points[i].getY();
+      sideLengthSquared[i] = sideX[i] * sideX[i] + sideY[i] * sideY[i];
+      inverseSlope[i] = sideY[i] != 0 ? sideX[i] / sideY[i] : 0;
+    }
+  }
+
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Counts the sides crossed going right from the point. It's inside if that's odd.
+   */
+  public boolean contains(double x, double y) {
+    boolean inside = false;
+    for (int i = 0; i < count; i++) {
+      if ((startY[i] > y) != (endY[i] > y) && x < startX[i] + (y - startY[i]) * inverseSlope[i]) {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+
+  /**
+   * Tests points from, in order, to from + length against the polygon in one pass over its sides.
+   *
+   * @param offsetX taken off of every x, to move the points to the origin
+   * @param inside set to whether each point is inside, at the same index as the point
+   * @return how many of the points are inside
+   */
+  public int containsAll(double[] x, double[] y, int from, int length, double offsetX,
+      double offsetY, boolean[] inside) {
+    int to = from + length;
+    int insideCount = 0;
+    for (int blockStart = from; blockStart < to; blockStart += BLOCK) {
+      int blockLength = Math.min(to - blockStart, BLOCK);
+      Arrays.fill(crossings, 0, blockLength, 0);
+      for (int i = 0; i < count; i++) {
+        double x0 = startX[i] + offsetX;
+        double y0 = startY[i] + offsetY;
+        double y1 = endY[i] + offsetY;
+        double slope = inverseSlope[i];
+        for (int k = 0; k < blockLength; k++) {
+          double pointY = y[blockStart + k];
+          //Whether the side is crossed can't be guessed from the last point, so it's worked out
+          //from sign bits instead of branching. The point is between the ends of the side if
+          //it's below just one of them, and the side is to the right if the point is left of it
+          long between = Double.doubleToRawLongBits(pointY - y0)
+              ^ Double.doubleToRawLongBits(pointY - y1);
+          long left = Double.doubleToRawLongBits(x[blockStart + k] - x0 - (pointY - y0) * slope);
+          crossings[k] += (int) ((between & left) >>> 63);
+        }
+      }
+      for (int k = 0; k < blockLength; k++) {
+        inside[blockStart + k] = (crossings[k] & 1) != 0;
+        insideCount += crossings[k] & 1;
+      }
+    }
+    return insideCount;
+  }
+
+  /**
+   * Finds how far each of the points from, in order, to from + length is from the closest side,
+   * squared, in one pass over the sides.
+   *
+   * @param distancesSquared set to each distance, at the same index as the point
+   */
+  public void distancesSquared(double[] x, double[] y, int from, int length, double offsetX,
+      double offsetY, double[] distancesSquared) {
+    int to = from + length;
+    for (int blockStart = from; blockStart < to; blockStart += BLOCK) {
+      int blockEnd = Math.min(to, blockStart + BLOCK);
+      for (int j = blockStart; j < blockEnd; j++) {
+        distancesSquared[j] = Double.POSITIVE_INFINITY;
+      }
+      for (int i = 0; i < count; i++) {
+        double x0 = startX[i] + offsetX;
+        double y0 = startY[i] + offsetY;
+        double dX = sideX[i];
+        double dY = sideY[i];
+        //Points on a side with no length are all the same distance from both ends
+        double inverseLength = sideLengthSquared[i] > 0 ? 1 / sideLengthSquared[i] : 0;
+        for (int j = blockStart; j < blockEnd; j++) {
+          double toX = x[j] - x0;
+          double toY = y[j] - y0;
+          double along = Math.max(0, Math.min(1, (toX * dX + toY * dY) * inverseLength));
+          double offX = toX - dX * along;
+          double offY = toY - dY * along;
+          distancesSquared[j] = Math.min(distancesSquared[j], offX * offX + offY * offY);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the side closest to the point, by the same measure as distancesSquared
+   */
+  public int closestSide(double x, double y) {
+    int closest = 0;
+    double closestDistance = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      double distance = distanceSquaredToSide(i, x, y);
+      if (distance < closestDistance) {
+        closest = i;
+        closestDistance = distance;
+      }
+    }
+    return closest;
+  }
+
+  public double distanceSquaredToSide(int side, double x, double y) {
+    double toX = x - startX[side];
+    double toY = y - startY[side];
+    //How far along the side the closest point on it is, from 0 to 1
+    double along = sideLengthSquared[side] > 0
+        ? Math.max(0, Math.min(1,
+        (toX * sideX[side] + toY * sideY[side]) / sideLengthSquared[side]))
+        : 0;
+    double dX = toX - sideX[side] * along;
+    double dY = toY - sideY[side] * along;
+    return dX * dX + dY * dY;
+  }
+}
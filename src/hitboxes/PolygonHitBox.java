@@ -3,51 +3,183 @@ package hitboxes;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+/**
+ * A HitBox with straight sides between its points, in order, and from the last back to the
+ * first. The direction, length, outward normal and angle of every side are worked out once, since
+ * moving the polygon doesn't change them.
+ */
 public class PolygonHitBox extends HitBox {
 
   private final ObservableList<CollisionLine> collisionLines;
+  //The points, so the sides can be walked without going through the ObservableList
+  private final HitBoxPoint[] points;
+  //The sides packed up for testing points against, measured from the center
+  private final PolygonEdges edges;
+  //Side i goes from points[i] to points[i + 1]
+  private final double[] sideLength;
+  private final double[] normalX;
+  private final double[] normalY;
+  //Boxed once here, so finding the deflection angle doesn't box a new one each time
+  private final Double[] wallAngles;
+  //Where signedDistances keeps which points are inside, grown when it's too small
+  private boolean[] inside = new boolean[0];
 
   public PolygonHitBox(double centerX, double centerY, ObservableList<HitBoxPoint> hitBoxPoints) {
     super(centerX, centerY, hitBoxPoints);
 
+    int count = hitBoxPoints.size();
+    points = hitBoxPoints.toArray(new HitBoxPoint[0]);
     collisionLines = FXCollections.observableArrayList();
-    for (int i = 0; i < hitBoxPoints.size() - 2; i++) {
-      collisionLines.add(new CollisionLine(hitBoxPoints.get(i), hitBoxPoints.get(i + 1)));
+    for (int i = 0; i < count; i++) {
+      collisionLines.add(new CollisionLine(points[i], points[(i + 1) % count]));
     }
-    collisionLines
-        .add(new CollisionLine(hitBoxPoints.get(hitBoxPoints.size() - 1), hitBoxPoints.get(0)));
+
+    edges = new PolygonEdges(points, centerX, centerY);
+    sideLength = new double[count];
+    normalX = new double[count];
+    normalY = new double[count];
+    wallAngles = new Double[count];
+    //Which way the points go around decides which side of each side is out
+    double area = 0;
+    for (int i = 0; i < count; i++) {
+      HitBoxPoint next = points[(i + 1) % count];
+      area += points[i].getX() * next.getY() - next.getX() * points[i].getY();
+    }
+    double outward = area >= 0 ? 1 : -1;
+    for (int i = 0; i < count; i++) {
+      HitBoxPoint next = points[(i + 1) % count];
+      double sideX = next.getX() - points[i].getX();
+      double sideY = next.getY() - points[i].getY();
+      sideLength[i] = Math.hypot(sideX, sideY);
+      if (sideLength[i] > 0) {
+        normalX[i] = outward * sideY / sideLength[i];
+        normalY[i] = -outward * sideX / sideLength[i];
+      }
+      wallAngles[i] = collisionLines.get(i).getWallAngle();
+    }
+
+    double minX = Double.POSITIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    double reach = 0;
+    for (HitBoxPoint point : points) {
+      minX = Math.min(minX, point.getX());
+      minY = Math.min(minY, point.getY());
+      maxX = Math.max(maxX, point.getX());
+      maxY = Math.max(maxY, point.getY());
+      reach = Math.max(reach, Math.hypot(point.getX() - centerX, point.getY() - centerY));
+    }
+    setBounds(minX, minY, maxX, maxY, reach);
   }
 
   public ObservableList<CollisionLine> getCollisionLines() {
     return collisionLines;
   }
 
+  public int getSideCount() {
+    return points.length;
+  }
+
+  public double getSideLength(int side) {
+    return sideLength[side];
+  }
+
   /**
-   * @return the angle of deflection, if the polygons have intersected. null if they haven't
+   * @return the x component of the unit vector pointing out of the polygon from a side
    */
+  public double getNormalX(int side) {
+    return normalX[side];
+  }
+
+  public double getNormalY(int side) {
+    return normalY[side];
+  }
+
+  @Override
+  public double findDeflectionAngle(HitBox testHitBox) {
+    int side = findHitSide(testHitBox);
+    return side < 0 ? Double.NaN : wallAngles[side];
+  }
+
   @Override
   public Double getDeflectionAngle(HitBox testHitBox) {
-    int count = 0;
-    CollisionLine closestLine = this.collisionLines.get(0);
-    for (HitBoxPoint point : testHitBox.getHitBoxPoints(this)) {
-      for (CollisionLine borderLine : this.collisionLines) {
-        if (borderLine.isRightOfPoint(point)) {
-          count++;
-        }
-
-        if (borderLine.findDistanceRatio(point) < closestLine.findDistanceRatio(point)) {
-          closestLine = borderLine;
-        }
-      }
+    //Hand back the boxed angle instead of boxing a new one
+    int side = findHitSide(testHitBox);
+    return side < 0 ? null : wallAngles[side];
+  }
+
+  /**
+   * @return the side closest to the first of testHitBox's points inside of this polygon, or -1 if
+   *     none are
+   */
+  private int findHitSide(HitBox testHitBox) {
+    if (!mightTouch(testHitBox)) {
+      return -1;
     }
-    if (count % 2 == 1) {
-      return closestLine.getWallAngle();
+    ObservableList<HitBoxPoint> testPoints = testHitBox.getHitBoxPoints(this);
+    for (int i = 0; i < testPoints.size(); i++) {
+      double x = testPoints.get(i).getX();
+      double y = testPoints.get(i).getY();
+      if (mightContain(x, y) && contains(x, y)) {
+        return closestSide(x, y);
+      }
     }
-    return null;
+    return -1;
   }
 
   @Override
   public ObservableList<HitBoxPoint> getHitBoxPoints(HitBox testHitBox) {
     return hitBoxPoints;
   }
+
+  /**
+   * Counts the sides crossed going right from the point. It's inside if that's odd.
+   */
+  public boolean contains(double x, double y) {
+    return edges.contains(x - centerX, y - centerY);
+  }
+
+  /**
+   * Tests lots of points against the polygon at once, like all the particles, in one pass over
+   * its sides.
+   *
+   * @param inside set to whether each point is inside, at the same index as the point
+   * @return how many of the points are inside
+   */
+  public int containsAll(double[] x, double[] y, int count, boolean[] inside) {
+    return edges.containsAll(x, y, 0, count, centerX, centerY, inside);
+  }
+
+  /**
+   * The distance to the closest side, negative if the point is inside.
+   */
+  @Override
+  public double signedDistance(double x, double y) {
+    double closest = Math.sqrt(
+        edges.distanceSquaredToSide(closestSide(x, y), x - centerX, y - centerY));
+    return contains(x, y) ? -closest : closest;
+  }
+
+  @Override
+  public void signedDistances(double[] x, double[] y, int count, double[] distances) {
+    edges.distancesSquared(x, y, 0, count, centerX, centerY, distances);
+    boolean[] inside = insideScratch(count);
+    edges.containsAll(x, y, 0, count, centerX, centerY, inside);
+    for (int i = 0; i < count; i++) {
+      double distance = Math.sqrt(distances[i]);
+      distances[i] = inside[i] ? -distance : distance;
+    }
+  }
+
+  private boolean[] insideScratch(int count) {
+    if (inside.length < count) {
+      inside = new boolean[count];
+    }
+    return inside;
+  }
+
+  private int closestSide(double x, double y) {
+    return edges.closestSide(x - centerX, y - centerY);
+  }
 }
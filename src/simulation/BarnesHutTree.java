@@ -0,0 +1,344 @@
+package simulation;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A quadtree over every particle, used to find the gravity the particles exert on each other in
+ * O(n log n) instead of O(n^2). Groups of particles that look small from where the acceleration is
+ * wanted (their size over their distance is under the opening angle, theta) are treated as a
+ * single mass at their center of mass.
+ *
+ * <p>The tree is rebuilt from scratch every tick. The particles are sorted by their Morton code,
+ * which puts every quadrant's particles next to each other, so each node is just a range of the
+ * sorted particles. Nodes that would only have one child are skipped, which keeps the tree under
+ * 2n nodes. Large subtrees are built in parallel, and the tree is read-only once built, so any
+ * number of threads can walk it.
+ */
+public class BarnesHutTree {
+
+  //Bits of the Morton code used per axis, leaving the sign bit of the sort key clear
+  private static final int BITS = 15;
+  private static final int LEAF_SIZE = 8;
+  private static final int PARALLEL_BUILD_SIZE = 4096;
+  //Deep enough for four children on every level of the tree
+  private static final int WALK_STACK_SIZE = 4 * (BITS + 1);
+
+  private final ThreadLocal<int[]> walkStacks =
+      ThreadLocal.withInitial(() -> new int[WALK_STACK_SIZE]);
+  private final LongAdder interactions = new LongAdder();
+  private final AtomicInteger nodeCount = new AtomicInteger();
+
+  //The particles, sorted by their Morton code
+  private long[] keys = new long[0];
+  private double[] sortedX = new double[0];
+  private double[] sortedY = new double[0];
+  private int particleCount;
+  private double particleMass;
+
+  //The nodes. Leaves have no children and hold the sorted particles in [start, end)
+  private double[] nodeMass = new double[0];
+  private double[] nodeX = new double[0];
+  private double[] nodeY = new double[0];
+  private double[] nodeSize = new double[0];
+  private int[] nodeStart = new int[0];
+  private int[] nodeEnd = new int[0];
+  private int[] nodeChildren = new int[0];
+  private int[] nodeChildCount = new int[0];
+  private int root = -1;
+
+  private double minX;
+  private double minY;
+  private double rootSize;
+  private volatile double averageInteractions;
+
+  /**
+   * Rebuilds the tree from the current positions of the particles. Must not be called while the
+   * tree is being walked.
+   *
+   * @param store the particles
+   * @param particleMass the mass of every particle
+   */
+  public void build(ParticleStore store, double particleMass) {
+    //Report how much work the last tick's walks took before starting over
+    long walked = interactions.sumThenReset();
+    averageInteractions = particleCount == 0 ? 0 : (double) walked / particleCount;
+
+    this.particleCount = store.size();
+    this.particleMass = particleMass;
+    ensureCapacity(particleCount);
+    nodeCount.set(0);
+    if (particleCount == 0) {
+      root = -1;
+      return;
+    }
+
+    findBounds(store);
+    double[] x = store.getX();
+    double[] y = store.getY();
+    //Pack the Morton code above the particle's index so sorting the keys sorts the particles
+    ParallelLoop.forRange(particleCount, PARALLEL_BUILD_SIZE, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        keys[i] = (long) mortonCode(x[i], y[i]) << 32 | i;
+      }
+    });
+    if (ParallelLoop.getParallelism() > 1) {
+      Arrays.parallelSort(keys, 0, particleCount);
+    } else {
+      Arrays.sort(keys, 0, particleCount);
+    }
+    ParallelLoop.forRange(particleCount, PARALLEL_BUILD_SIZE, (from, to) -> {
+      for (int k = from; k < to; k++) {
+        int i = (int) keys[k];
+        sortedX[k] = x[i];
+        sortedY[k] = y[i];
+      }
+    });
+
+    root = buildNode(0, particleCount);
+  }
+
+  /**
+   * Finds the acceleration from every particle's gravity at a point. Particles right at the point
+   * contribute nothing, so a particle can pass in its own position.
+   *
+   * @param gravityConstant G
+   * @param theta the opening angle. 0 is exact and slow, larger is faster and rougher
+   * @param softening keeps the acceleration finite when particles get close
+   * @param acceleration the acceleration is added to this. Positive y is up
+   */
+  public void addAcceleration(double x, double y, double gravityConstant, double theta,
+      double softening, CartesianVector acceleration) {
+    if (root < 0) {
+      return;
+    }
+    int[] stack = walkStacks.get();
+    int top = 0;
+    stack[top++] = root;
+    double thetaSquared = theta * theta;
+    double softeningSquared = softening * softening;
+    double ax = 0;
+    double ay = 0;
+    int count = 0;
+
+    while (top > 0) {
+      int node = stack[--top];
+      double dX = nodeX[node] - x;
+      double dY = nodeY[node] - y;
+      double distanceSquared = dX * dX + dY * dY;
+
+      if (nodeSize[node] * nodeSize[node] < thetaSquared * distanceSquared) {
+        //Far enough away to treat as one mass
+        double scale = nodeMass[node] / particleMass * inverseCube(
+            distanceSquared + softeningSquared);
+        ax += dX * scale;
+        ay += dY * scale;
+        count++;
+      } else if (nodeChildCount[node] == 0) {
+        //Close leaves are summed particle by particle
+        for (int k = nodeStart[node]; k < nodeEnd[node]; k++) {
+          double pX = sortedX[k] - x;
+          double pY = sortedY[k] - y;
+          double scale = inverseCube(pX * pX + pY * pY + softeningSquared);
+          ax += pX * scale;
+          ay += pY * scale;
+        }
+        count += nodeEnd[node] - nodeStart[node];
+      } else {
+        int children = nodeChildCount[node];
+        System.arraycopy(nodeChildren, node * 4, stack, top, children);
+        top += children;
+      }
+    }
+
+    interactions.add(count);
+    //Screen y is down, but accelerations are positive up
+    double strength = gravityConstant * particleMass;
+    acceleration.add(ax * strength, -ay * strength);
+  }
+
+  /**
+   * @return the average number of nodes and particles each walk in the last tick looked at
+   */
+  public double getAverageInteractions() {
+    return averageInteractions;
+  }
+
+  private static double inverseCube(double distanceSquared) {
+    return 1 / (distanceSquared * Math.sqrt(distanceSquared));
+  }
+
+  /**
+   * Builds the node for the sorted particles in [start, end), and everything under it.
+   *
+   * @return the index of the node
+   */
+  private int buildNode(int start, int end) {
+    int node = nodeCount.getAndIncrement();
+    nodeStart[node] = start;
+    nodeEnd[node] = end;
+
+    long first = keys[start] >>> 32;
+    long last = keys[end - 1] >>> 32;
+    if (end - start <= LEAF_SIZE || first == last) {
+      buildLeaf(node, start, end);
+      return node;
+    }
+
+    //Split on the highest pair of bits that isn't the same for every particle in the range
+    int highestBit = 63 - Long.numberOfLeadingZeros(first ^ last);
+    int shift = highestBit & ~1;
+    nodeSize[node] = rootSize / (1 << (BITS - 1 - shift / 2));
+
+    if (end - start > PARALLEL_BUILD_SIZE) {
+      int[] bounds = new int[5];
+      int children = 0;
+      int childStart = start;
+      for (int quadrant = 0; quadrant < 4; quadrant++) {
+        int childEnd = quadrant == 3 ? end : firstAbove(childStart, end, shift, quadrant);
+        if (childEnd > childStart) {
+          bounds[children++] = childStart;
+          bounds[children] = childEnd;
+        }
+        childStart = childEnd;
+      }
+      nodeChildCount[node] = children;
+      ParallelLoop.forRange(children, 1, (from, to) -> {
+        for (int c = from; c < to; c++) {
+          nodeChildren[node * 4 + c] = buildNode(bounds[c], bounds[c + 1]);
+        }
+      });
+    } else {
+      int children = 0;
+      int childStart = start;
+      for (int quadrant = 0; quadrant < 4; quadrant++) {
+        int childEnd = quadrant == 3 ? end : firstAbove(childStart, end, shift, quadrant);
+        if (childEnd > childStart) {
+          nodeChildren[node * 4 + children++] = buildNode(childStart, childEnd);
+        }
+        childStart = childEnd;
+      }
+      nodeChildCount[node] = children;
+    }
+
+    //Combine the children in a fixed order so the result doesn't depend on the threads
+    double mass = 0;
+    double sumX = 0;
+    double sumY = 0;
+    for (int c = 0; c < nodeChildCount[node]; c++) {
+      int child = nodeChildren[node * 4 + c];
+      mass += nodeMass[child];
+      sumX += nodeX[child] * nodeMass[child];
+      sumY += nodeY[child] * nodeMass[child];
+    }
+    nodeMass[node] = mass;
+    nodeX[node] = sumX / mass;
+    nodeY[node] = sumY / mass;
+    return node;
+  }
+
+  /**
+   * Sums up a node with no children. Its size is how far its particles are spread out.
+   */
+  private void buildLeaf(int node, int start, int end) {
+    double sumX = 0;
+    double sumY = 0;
+    double left = Double.POSITIVE_INFINITY;
+    double right = Double.NEGATIVE_INFINITY;
+    double top = Double.POSITIVE_INFINITY;
+    double bottom = Double.NEGATIVE_INFINITY;
+    for (int k = start; k < end; k++) {
+      sumX += sortedX[k];
+      sumY += sortedY[k];
+      left = Math.min(left, sortedX[k]);
+      right = Math.max(right, sortedX[k]);
+      top = Math.min(top, sortedY[k]);
+      bottom = Math.max(bottom, sortedY[k]);
+    }
+    nodeChildCount[node] = 0;
+    nodeSize[node] = Math.max(right - left, bottom - top);
+    nodeMass[node] = particleMass * (end - start);
+    nodeX[node] = sumX / (end - start);
+    nodeY[node] = sumY / (end - start);
+  }
+
+  /**
+   * @return the first sorted particle in [start, end) whose two bits at shift are above quadrant
+   */
+  private int firstAbove(int start, int end, int shift, int quadrant) {
+    int low = start;
+    int high = end;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (((keys[middle] >>> 32 >>> shift) & 3) <= quadrant) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Finds the smallest square holding every particle.
+   */
+  private void findBounds(ParticleStore store) {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    minX = Double.POSITIVE_INFINITY;
+    minY = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < particleCount; i++) {
+      minX = Math.min(minX, x[i]);
+      minY = Math.min(minY, y[i]);
+      maxX = Math.max(maxX, x[i]);
+      maxY = Math.max(maxY, y[i]);
+    }
+    rootSize = Math.max(Math.max(maxX - minX, maxY - minY), 1);
+  }
+
+  /**
+   * Interleaves the bits of the x and y cells a point is in, y first.
+   */
+  private int mortonCode(double x, double y) {
+    int cells = (1 << BITS) - 1;
+    int column = (int) Math.min(cells, (x - minX) / rootSize * cells);
+    int row = (int) Math.min(cells, (y - minY) / rootSize * cells);
+    return spreadBits(column) | spreadBits(row) << 1;
+  }
+
+  /**
+   * @return the 15 low bits of value, with a 0 bit put in front of each one
+   */
+  private static int spreadBits(int value) {
+    value &= 0x7FFF;
+    value = (value | value << 8) & 0x00FF00FF;
+    value = (value | value << 4) & 0x0F0F0F0F;
+    value = (value | value << 2) & 0x33333333;
+    value = (value | value << 1) & 0x55555555;
+    return value;
+  }
+
+  private void ensureCapacity(int particles) {
+    if (keys.length < particles) {
+      int capacity = Math.max(particles, keys.length * 2);
+      keys = new long[capacity];
+      sortedX = new double[capacity];
+      sortedY = new double[capacity];
+    }
+    int nodes = particles * 2 + 1;
+    if (nodeMass.length < nodes) {
+      int capacity = Math.max(nodes, nodeMass.length * 2);
+      nodeMass = new double[capacity];
+      nodeX = new double[capacity];
+      nodeY = new double[capacity];
+      nodeSize = new double[capacity];
+      nodeStart = new int[capacity];
+      nodeEnd = new int[capacity];
+      nodeChildren = new int[capacity * 4];
+      nodeChildCount = new int[capacity];
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package simulation;
+
+/**
+ * A mutable vector kept as x and y components. Unlike utilities.Vector, nothing here allocates,
+ * and the angle is only worked out when it's asked for. The physics reuse these instead of making
+ * new Vectors every tick.
+ */
+public class CartesianVector {
+
+  private double x;
+  private double y;
+
+  public CartesianVector() {
+  }
+
+  public CartesianVector(double x, double y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  public double getX() {
+    return x;
+  }
+
+  public double getY() {
+    return y;
+  }
+
+  /**
+   * @return this CartesianVector, now {@literal <x, y>}
+   */
+  public CartesianVector set(double x, double y) {
+    this.x = x;
+    this.y = y;
+    return this;
+  }
+
+  /**
+   * @return this CartesianVector, with {@literal <dx, dy>} added to it
+   */
+  public CartesianVector add(double dx, double dy) {
+    x += dx;
+    y += dy;
+    return this;
+  }
+
+  /**
+   * @return this CartesianVector, multiplied by scalar
+   */
+  public CartesianVector scale(double scalar) {
+    x *= scalar;
+    y *= scalar;
+    return this;
+  }
+
+  /**
+   * Shrinks this CartesianVector to maxLength if it's any longer, keeping its direction.
+   *
+   * @return this CartesianVector
+   */
+  public CartesianVector clampLength(double maxLength) {
+    double lengthSquared = lengthSquared();
+    if (lengthSquared > maxLength * maxLength) {
+      scale(maxLength / Math.sqrt(lengthSquared));
+    }
+    return this;
+  }
+
+  /**
+   * Scales this CartesianVector to a length of 1. A zero vector is left alone.
+   *
+   * @return this CartesianVector
+   */
+  public CartesianVector normalize() {
+    double length = length();
+    if (length > 0) {
+      scale(1 / length);
+    }
+    return this;
+  }
+
+  public double dot(double otherX, double otherY) {
+    return x * otherX + y * otherY;
+  }
+
+  public double lengthSquared() {
+    return x * x + y * y;
+  }
+
+  public double length() {
+    return Math.sqrt(lengthSquared());
+  }
+
+  /**
+   * @return the angle (in radians) of this CartesianVector
+   */
+  public double getAngle() {
+    return Math.atan2(y, x);
+  }
+
+  public String toString() {
+    return String.format("<%.3f, %.3f>", x, y);
+  }
+}
@@ -0,0 +1,11 @@
+package simulation;
+
+/**
+ * Tells particles how to handle the edge of the world
+ */
+public enum EdgeHandling {
+  WRAP,
+  BOUND,
+  BOUNCE,
+  SUSTAIN
+}
@@ -0,0 +1,15 @@
+package simulation;
+
+/**
+ * Moves each particle by its velocity, then adds the gravity where it ends up (semi-implicit
+ * Euler). It's one pass and one look up of the gravity a step, and orbits only wander a little
+ * as long as the steps are short, but the velocity is always half a step behind the position, so
+ * orbits started at the right speed come out lopsided at long steps.
+ */
+public class EulerIntegrator implements Integrator {
+
+  @Override
+  public void advance(Motion motion, double time) {
+    motion.driftAndKick(time);
+  }
+}
@@ -0,0 +1,96 @@
+package simulation;
+
+/**
+ * An in place radix-2 fast Fourier transform of one length, which has to be a power of two. The
+ * twiddle factors and the bit reversed order are worked out once, so a transform only reads
+ * tables. Each pass has its own twiddle factors next to each other, so they're read in order
+ * instead of jumping through one table. Nothing changes between transforms, so any number of
+ * threads can share one.
+ */
+final class FastFourierTransform {
+
+  private final int length;
+  //Where each index goes when the values are put in bit reversed order
+  private final int[] reversed;
+  //The pass over pairs half apart uses cos and sin of PI k / half, for k up to half, starting at
+  //index half - 1
+  private final double[] cos;
+  private final double[] sin;
+
+  /**
+   * @param length how many values are transformed at a time, a power of two
+   */
+  FastFourierTransform(int length) {
+    if (length < 1 || Integer.bitCount(length) != 1) {
+      throw new IllegalArgumentException(length + " isn't a power of two");
+    }
+    this.length = length;
+    reversed = new int[length];
+    int bits = Integer.numberOfTrailingZeros(length);
+    for (int i = 0; i < length; i++) {
+      reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+    }
+    cos = new double[Math.max(length - 1, 0)];
+    sin = new double[Math.max(length - 1, 0)];
+    for (int half = 1; half < length; half <<= 1) {
+      for (int k = 0; k < half; k++) {
+        cos[half - 1 + k] = Math.cos(Math.PI * k / half);
+        sin[half - 1 + k] = Math.sin(Math.PI * k / half);
+      }
+    }
+  }
+
+  int getLength() {
+    return length;
+  }
+
+  /**
+   * Transforms length values, starting at offset, in place. The inverse isn't divided by the
+   * length, so a transform and its inverse scale the values by the length.
+   *
+   * @param real the real parts
+   * @param imaginary the imaginary parts
+   * @param inverse whether to turn the other way, from frequencies back to values
+   */
+  void transform(double[] real, double[] imaginary, int offset, boolean inverse) {
+    for (int i = 0; i < length; i++) {
+      int j = reversed[i];
+      if (j > i) {
+        double swap = real[offset + i];
+        real[offset + i] = real[offset + j];
+        real[offset + j] = swap;
+        swap = imaginary[offset + i];
+        imaginary[offset + i] = imaginary[offset + j];
+        imaginary[offset + j] = swap;
+      }
+    }
+
+    //The first pass only adds and subtracts neighbours
+    for (int a = offset; a < offset + length - 1; a += 2) {
+      double differenceReal = real[a] - real[a + 1];
+      double differenceImaginary = imaginary[a] - imaginary[a + 1];
+      real[a] += real[a + 1];
+      imaginary[a] += imaginary[a + 1];
+      real[a + 1] = differenceReal;
+      imaginary[a + 1] = differenceImaginary;
+    }
+
+    double sign = inverse ? 1 : -1;
+    for (int half = 2; half < length; half <<= 1) {
+      for (int start = offset; start < offset + length; start += 2 * half) {
+        for (int k = 0; k < half; k++) {
+          double twiddleReal = cos[half - 1 + k];
+          double twiddleImaginary = sign * sin[half - 1 + k];
+          int a = start + k;
+          int b = a + half;
+          double turnedReal = real[b] * twiddleReal - imaginary[b] * twiddleImaginary;
+          double turnedImaginary = real[b] * twiddleImaginary + imaginary[b] * twiddleReal;
+          real[b] = real[a] - turnedReal;
+          imaginary[b] = imaginary[a] - turnedImaginary;
+          real[a] += turnedReal;
+          imaginary[a] += turnedImaginary;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * The combined gravity of a set of fixed point masses, baked into a grid. Looking up the gravity
+ * at a point reads the four grid points around it and blends them, so it costs the same no matter
+ * how many sources there are. Moving a source or changing its mass only subtracts its old
+ * gravity from the grid and adds the new one.
+ *
+ * <p>The grid covers the window and half a window past each edge. Past that, the sources are
+ * summed directly.
+ *
+ * <p>Nothing here is synchronized. Edit the field on the thread that samples it, or between
+ * samples. Only sumPublishedSources can be called from any thread, since it reads a copy of the
+ * sources made after each edit.
+ */
+public class GravityField {
+
+  private static final double CELL_SIZE = 8;
+  //Subtracting and re-adding a source doesn't quite cancel out, so every so often start over
+  private static final int EDITS_BEFORE_REBAKE = 256;
+
+  private final double gravityConstant;
+  private final double left;
+  private final double top;
+  private final int columns;
+  private final int rows;
+  //The acceleration at each grid point. Positive y is up
+  private final double[] fieldX;
+  private final double[] fieldY;
+
+  private double[] sourceX = new double[4];
+  private double[] sourceY = new double[4];
+  private double[] sourceMass = new double[4];
+  private double[] sourceRadius = new double[4];
+  private int sourceCount;
+  private int editsSinceBake;
+  //A copy of the sources for other threads, replaced after every edit
+  private volatile double[] published = new double[0];
+
+  /**
+   * @param width the width of the window
+   * @param height the height of the window
+   * @param gravityConstant G
+   */
+  public GravityField(double width, double height, double gravityConstant) {
+    this.gravityConstant = gravityConstant;
+    this.left = -width / 2;
+    this.top = -height / 2;
+    this.columns = (int) Math.ceil(width * 2 / CELL_SIZE) + 1;
+    this.rows = (int) Math.ceil(height * 2 / CELL_SIZE) + 1;
+    this.fieldX = new double[columns * rows];
+    this.fieldY = new double[columns * rows];
+  }
+
+  /**
+   * Adds a source. Inside its radius a source acts like a solid disk, so its pull falls to 0 at
+   * its center instead of blowing up.
+   *
+   * @return the index of the new source
+   */
+  public int addSource(double x, double y, double mass, double radius) {
+    if (sourceCount == sourceX.length) {
+      int capacity = sourceCount * 2;
+      sourceX = Arrays.copyOf(sourceX, capacity);
+      sourceY = Arrays.copyOf(sourceY, capacity);
+      sourceMass = Arrays.copyOf(sourceMass, capacity);
+      sourceRadius = Arrays.copyOf(sourceRadius, capacity);
+    }
+    sourceX[sourceCount] = x;
+    sourceY[sourceCount] = y;
+    sourceMass[sourceCount] = mass;
+    sourceRadius[sourceCount] = radius;
+    bake(sourceCount, mass);
+    sourceCount++;
+    publish();
+    return sourceCount - 1;
+  }
+
+  public void moveSource(int source, double x, double y) {
+    if (++editsSinceBake >= EDITS_BEFORE_REBAKE) {
+      sourceX[source] = x;
+      sourceY[source] = y;
+      rebake();
+    } else {
+      bake(source, -sourceMass[source]);
+      sourceX[source] = x;
+      sourceY[source] = y;
+      bake(source, sourceMass[source]);
+    }
+    publish();
+  }
+
+  public void setMass(int source, double mass) {
+    double change = mass - sourceMass[source];
+    sourceMass[source] = mass;
+    if (++editsSinceBake >= EDITS_BEFORE_REBAKE) {
+      rebake();
+    } else {
+      //Gravity is linear in the mass, so only the difference needs adding
+      bake(source, change);
+    }
+    publish();
+  }
+
+  /**
+   * Removes every source.
+   */
+  public void clearSources() {
+    sourceCount = 0;
+    editsSinceBake = 0;
+    Arrays.fill(fieldX, 0);
+    Arrays.fill(fieldY, 0);
+    publish();
+  }
+
+  public int getSourceCount() {
+    return sourceCount;
+  }
+
+  public double getSourceX(int source) {
+    return sourceX[source];
+  }
+
+  public double getSourceY(int source) {
+    return sourceY[source];
+  }
+
+  public double getSourceMass(int source) {
+    return sourceMass[source];
+  }
+
+  public double getSourceRadius(int source) {
+    return sourceRadius[source];
+  }
+
+  /**
+   * Sets acceleration to the gravity at (x, y), positive y being up.
+   */
+  public void sample(double x, double y, CartesianVector acceleration) {
+    double column = (x - left) / CELL_SIZE;
+    double row = (y - top) / CELL_SIZE;
+    if (!(column >= 0 && row >= 0 && column < columns - 1 && row < rows - 1)) {
+      sumSources(x, y, acceleration);
+      return;
+    }
+    int c = (int) column;
+    int r = (int) row;
+    double u = column - c;
+    double v = row - r;
+    int topLeft = r * columns + c;
+    int bottomLeft = topLeft + columns;
+    double w00 = (1 - u) * (1 - v);
+    double w10 = u * (1 - v);
+    double w01 = (1 - u) * v;
+    double w11 = u * v;
+    acceleration.set(
+        fieldX[topLeft] * w00 + fieldX[topLeft + 1] * w10
+            + fieldX[bottomLeft] * w01 + fieldX[bottomLeft + 1] * w11,
+        fieldY[topLeft] * w00 + fieldY[topLeft + 1] * w10
+            + fieldY[bottomLeft] * w01 + fieldY[bottomLeft + 1] * w11);
+  }
+
+  /**
+   * Sets acceleration to the exact gravity at (x, y), summed over every source.
+   */
+  public void sumSources(double x, double y, CartesianVector acceleration) {
+    double ax = 0;
+    double ay = 0;
+    for (int s = 0; s < sourceCount; s++) {
+      double dX = sourceX[s] - x;
+      double dY = y - sourceY[s];
+      double scale = strength(sourceRadius[s], sourceMass[s], dX * dX + dY * dY);
+      ax += dX * scale;
+      ay += dY * scale;
+    }
+    acceleration.set(ax, ay);
+  }
+
+  /**
+   * Sets acceleration to the exact gravity at (x, y) from the sources as of the last finished
+   * edit. Safe to call from any thread, even while the field is being edited.
+   */
+  public void sumPublishedSources(double x, double y, CartesianVector acceleration) {
+    double[] sources = published;
+    double ax = 0;
+    double ay = 0;
+    for (int k = 0; k < sources.length; k += 4) {
+      double dX = sources[k] - x;
+      double dY = y - sources[k + 1];
+      double scale = strength(sources[k + 3], sources[k + 2], dX * dX + dY * dY);
+      ax += dX * scale;
+      ay += dY * scale;
+    }
+    acceleration.set(ax, ay);
+  }
+
+  /**
+   * Copies the sources for sumPublishedSources, as x, y, mass and radius for each.
+   */
+  private void publish() {
+    double[] sources = new double[sourceCount * 4];
+    for (int s = 0, k = 0; s < sourceCount; s++) {
+      sources[k++] = sourceX[s];
+      sources[k++] = sourceY[s];
+      sources[k++] = sourceMass[s];
+      sources[k++] = sourceRadius[s];
+    }
+    published = sources;
+  }
+
+  /**
+   * Bakes the grid again from scratch.
+   */
+  private void rebake() {
+    editsSinceBake = 0;
+    Arrays.fill(fieldX, 0);
+    Arrays.fill(fieldY, 0);
+    for (int s = 0; s < sourceCount; s++) {
+      bake(s, sourceMass[s]);
+    }
+  }
+
+  /**
+   * Adds the gravity of a source to every grid point, as if it had the given mass.
+   */
+  private void bake(int source, double mass) {
+    if (mass == 0) {
+      return;
+    }
+    double x = sourceX[source];
+    double y = sourceY[source];
+    ParallelLoop.forRange(rows, 16, (from, to) -> {
+      for (int r = from; r < to; r++) {
+        double dY = top + r * CELL_SIZE - y;
+        for (int c = 0; c < columns; c++) {
+          double dX = x - (left + c * CELL_SIZE);
+          double scale = strength(sourceRadius[source], mass, dX * dX + dY * dY);
+          fieldX[r * columns + c] += dX * scale;
+          fieldY[r * columns + c] += dY * scale;
+        }
+      }
+    });
+  }
+
+  /**
+   * @return what to multiply the offset to a source by to get its gravity, GM / r^3, or GM / R^3
+   *     inside the source
+   */
+  private double strength(double radius, double mass, double distanceSquared) {
+    if (distanceSquared < radius * radius) {
+      return gravityConstant * mass / (radius * radius * radius);
+    }
+    return gravityConstant * mass / (distanceSquared * Math.sqrt(distanceSquared));
+  }
+}
@@ -0,0 +1,36 @@
+package simulation;
+
+/**
+ * Where the gravity in a World comes from.
+ */
+public interface GravityModel {
+
+  /**
+   * Called after collisions and before accelerationAt is called for every particle, which is at
+   * least once a tick, and more with substeps. Override it to set up anything accelerationAt needs
+   * from the particles.
+   */
+  default void prepare(ParticleStore particles) {
+  }
+
+  /**
+   * Called from the simulation threads for every particle every tick, so it must not allocate,
+   * and anything it reads must be safe to read from there.
+   *
+   * @param x the x value of the target particle
+   * @param y the y value of the target particle
+   * @param acceleration set to the acceleration of gravity acting on the target. Positive y is up
+   */
+  void accelerationAt(double x, double y, CartesianVector acceleration);
+
+  /**
+   * Finds the gravity at (x, y) for display and setup, from any thread and without waiting for a
+   * tick. It can leave out what only the simulation threads can read. By default it's
+   * accelerationAt, so override it if that isn't safe to call from other threads.
+   *
+   * @param acceleration set to the acceleration of gravity at (x, y). Positive y is up
+   */
+  default void previewAccelerationAt(double x, double y, CartesianVector acceleration) {
+    accelerationAt(x, y, acceleration);
+  }
+}
@@ -0,0 +1,136 @@
+package simulation;
+
+import java.util.Random;
+
+/**
+ * Runs a scenario with no window, as fast as it can, and prints how it went. Nothing here needs
+ * JavaFX, so it runs on machines without a display:
+ *
+ * <pre>
+ *   mvn compile
+ *   java -cp target/classes simulation.HeadlessRun source 5000 10000
+ * </pre>
+ *
+ * <p>Add --add-modules jdk.incubator.vector before -cp to move the particles with the Vector API,
+ * and -Dgravity.vector=false to turn that back off. Both give the same results.
+ *
+ * <p>The arguments are the scenario, the number of particles, the number of ticks, the random
+ * seed, the time step, how many 10 ms units of time each tick covers, 2 in the windows, the
+ * integrator, euler or verlet, and the number of substeps a tick. The scenarios are uniform,
+ * particles falling and bouncing like in Direction Control, pile, the same but bounded so the
+ * particles settle at the bottom and go to sleep, and source, particles orbiting one source like
+ * in Source Control.
+ */
+public final class HeadlessRun {
+
+  private static final double WIDTH = 1920;
+  private static final double HEIGHT = 1050;
+  //A unit of time is 10 ms, the same as in the windows
+  private static final double UNIT_SECONDS = 0.01;
+
+  private HeadlessRun() {
+  }
+
+  public static void main(String[] args) {
+    String scenario = args.length > 0 ? args[0] : "uniform";
+    int particleCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    long ticks = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+    Random random = new Random(args.length > 3 ? Long.parseLong(args[3]) : 1);
+    double timeStep = args.length > 4 ? Double.parseDouble(args[4]) : 1;
+    boolean verlet = args.length > 5 && args[5].equals("verlet");
+    int substeps = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+
+    World world = new World(WIDTH, HEIGHT);
+    world.setTimeStep(timeStep);
+    world.setIntegrator(verlet ? new VelocityVerletIntegrator() : new EulerIntegrator());
+    world.setSubsteps(substeps);
+    switch (scenario) {
+      case "uniform":
+        setUpUniform(world, particleCount, random, EdgeHandling.BOUNCE);
+        break;
+      case "pile":
+        setUpUniform(world, particleCount, random, EdgeHandling.BOUND);
+        break;
+      case "source":
+        setUpSource(world, particleCount, random);
+        break;
+      default:
+        System.err.println("Unknown scenario " + scenario + ", expected uniform, pile or source");
+        System.exit(1);
+        return;
+    }
+
+    Simulation simulation = new Simulation(world);
+    long start = System.nanoTime();
+    simulation.run(ticks);
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    System.out.printf("%s: %d particles, %d ticks (%.1f s simulated) in %.2f s%n", scenario,
+        particleCount, ticks, ticks * timeStep * UNIT_SECONDS, seconds);
+    System.out.printf("%.0f ticks per second, %.1fx real time%n", ticks / seconds,
+        ticks * timeStep * UNIT_SECONDS / seconds);
+    System.out.printf("Moving %d particles at a time, %s with %d substeps%n",
+        world.getIntegrationLanes(), verlet ? "velocity Verlet" : "Euler", substeps);
+    printState(world);
+  }
+
+  /**
+   * Particles dropped all over the window, falling at the default gravity of Direction Control.
+   */
+  private static void setUpUniform(World world, int particleCount, Random random,
+      EdgeHandling edgeHandling) {
+    world.setGravity(new UniformGravity(0, -0.05));
+    world.setMaxVelocity(12.5);
+    double radius = 5;
+    ParticleStore particles = world.getParticles();
+    particles.ensureCapacity(particleCount);
+    for (int i = 0; i < particleCount; i++) {
+      particles.add(radius + random.nextDouble() * (WIDTH - 2 * radius),
+          radius + random.nextDouble() * (HEIGHT - 2 * radius), 0, 0, radius,
+          edgeHandling, true);
+    }
+  }
+
+  /**
+   * Particles in circular orbits around a source in the middle of the window, at the default
+   * source mass of Source Control.
+   */
+  private static void setUpSource(World world, int particleCount, Random random) {
+    SourceGravity gravity = new SourceGravity(WIDTH, HEIGHT, 6.674);
+    gravity.getField().addSource(WIDTH / 2, HEIGHT / 2, 98.5, 25);
+    world.setGravity(gravity);
+    world.setMaxVelocity(7.25);
+    ParticleStore particles = world.getParticles();
+    particles.ensureCapacity(particleCount);
+    CartesianVector acceleration = new CartesianVector();
+    for (int i = 0; i < particleCount; i++) {
+      double distance = 100 + random.nextDouble() * 400;
+      double angle = random.nextDouble() * 2 * Math.PI;
+      double x = WIDTH / 2 + distance * Math.cos(angle);
+      double y = HEIGHT / 2 + distance * Math.sin(angle);
+      //v = sqrt(gr), at right angles to gravity
+      gravity.accelerationAt(x, y, acceleration);
+      double speed = Math.sqrt(acceleration.length() * distance);
+      acceleration.normalize().scale(speed);
+      particles.add(x, y, -acceleration.getY(), acceleration.getX(), 5, EdgeHandling.SUSTAIN,
+          false);
+    }
+  }
+
+  private static void printState(World world) {
+    ParticleStore particles = world.getParticles();
+    double speed = 0;
+    int inside = 0;
+    for (int i = 0; i < particles.size(); i++) {
+      speed += particles.speed(i);
+      double x = particles.getX()[i];
+      double y = particles.getY()[i];
+      if (x >= 0 && x <= world.getWidth() && y >= 0 && y <= world.getHeight()) {
+        inside++;
+      }
+    }
+    System.out.printf("Mean speed %.3f, %d of %d particles inside the window, %d asleep%n",
+        particles.size() == 0 ? 0 : speed / particles.size(), inside, particles.size(),
+        particles.getSleepingCount());
+  }
+}
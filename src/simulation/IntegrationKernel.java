@@ -0,0 +1,58 @@
+package simulation;
+
+/**
+ * Moves and accelerates a run of particles a vector of them at a time, for the part of a tick
+ * where every particle only depends on itself. It does exactly what ParticlePhysics does to one
+ * particle at a time, in the same order, so the results are the same to the last bit.
+ *
+ * <p>The only one is built on the Vector API, which is an incubator module the JVM only has when
+ * it's started with --add-modules jdk.incubator.vector, so it's loaded by name. Without it, or
+ * with the gravity.vector system property set to false, ParticlePhysics works one particle at a
+ * time.
+ */
+interface IntegrationKernel {
+
+  /**
+   * @return the kernel, or null if the Vector API isn't there or is turned off
+   */
+  static IntegrationKernel load(double width, double height) {
+    if (!Boolean.parseBoolean(System.getProperty("gravity.vector", "true"))) {
+      return null;
+    }
+    try {
+      IntegrationKernel kernel = (IntegrationKernel) Class.forName(
+              "simulation.VectorIntegrationKernel")
+          .getDeclaredConstructor(double.class, double.class)
+          .newInstance(width, height);
+      //A vector of one particle is just slower
+      return kernel.getLanes() > 1 ? kernel : null;
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return how many particles are worked on at a time
+   */
+  int getLanes();
+
+  /**
+   * Moves the awake particles in [from, to) like ParticlePhysics.updatePosition, as far as it can
+   * in whole vectors.
+   *
+   * @param timeOfImpact how far through the step each particle gets, or null if they all make it
+   * @return where it stopped. The particles from there to to are left for the caller
+   */
+  int move(ParticleStore store, double[] timeOfImpact, double timeStep, double friction,
+      int from, int to);
+
+  /**
+   * Adds the acceleration to the velocity of the awake particles in [from, to), capping the
+   * speed, like ParticlePhysics.updateVelocity, as far as it can in whole vectors.
+   *
+   * @param accelerationX the gravity on each particle, at the same index as the particle
+   * @return where it stopped. The particles from there to to are left for the caller
+   */
+  int accelerate(ParticleStore store, double[] accelerationX, double[] accelerationY,
+      double timeStep, double maxVelocity, int from, int to);
+}
@@ -0,0 +1,50 @@
+package simulation;
+
+/**
+ * How a World's particles are moved forward in time, built out of passes over every particle.
+ * The passes are drifts, which move the particles by their velocities, and kicks, which change
+ * their velocities by the gravity on them. Each pass is split across threads.
+ *
+ * <p>Collisions are handled once a tick, before the integrator runs. If the World has more than
+ * one substep a tick, the integrator runs once for each, over a part of the tick.
+ */
+public interface Integrator {
+
+  /**
+   * Moves every awake particle forward.
+   *
+   * @param time how many ticks to move them forward by
+   */
+  void advance(Motion motion, double time);
+
+  /**
+   * The passes an Integrator is built out of.
+   */
+  interface Motion {
+
+    /**
+     * Moves every awake particle by its velocity, handling the edges and the obstacles, and
+     * stopping fast particles short of what they would hit.
+     */
+    void drift(double time);
+
+    /**
+     * Finds the gravity on every awake particle where it is now, and adds it to the velocity,
+     * capping the speed. The gravity is remembered for kickAgain.
+     */
+    void kick(double time);
+
+    /**
+     * Adds the gravity found by the last kick to the velocities, so the gravity doesn't have to
+     * be found again. Particles that weren't kicked, or were changed since, have theirs found.
+     */
+    void kickAgain(double time);
+
+    /**
+     * A drift and then a kick in one pass over the particles, which is faster than doing them one
+     * after the other. The gravity is found before the drift, so anything the particles pull on
+     * each other with is from where they started.
+     */
+    void driftAndKick(double time);
+  }
+}
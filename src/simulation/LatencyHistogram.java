@@ -0,0 +1,128 @@
+package simulation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long something took, in nanoseconds, in buckets that are linear within each power of
+ * two, the way HdrHistogram does. Every value is counted to within about 3%, from 1 ns up to
+ * hundreds of years, in a fixed 15 KB of counts, and recording one is just finding its bucket and
+ * adding to it.
+ *
+ * <p>One thread records, and one other thread can read the counts while it does.
+ */
+public class LatencyHistogram {
+
+  //32 buckets for each power of two, so a bucket is at most 1/32 as wide as the values in it
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  //What the counts were the last time the reader summarized them
+  private final long[] summarized = new long[BUCKETS];
+  private final long[] interval = new long[BUCKETS];
+
+  /**
+   * Counts one value. Only call this from the thread that records.
+   */
+  public void record(long nanos) {
+    int index = indexOf(nanos);
+    //Nothing else writes to the counts, so they don't need to be added to atomically
+    counts.lazySet(index, counts.get(index) + 1);
+  }
+
+  /**
+   * Summarizes what was recorded since the last time this was called. Only call this from the
+   * thread that reads.
+   */
+  public Summary summarizeInterval() {
+    long total = 0;
+    int highest = -1;
+    for (int i = 0; i < BUCKETS; i++) {
+      long count = counts.get(i);
+      interval[i] = count - summarized[i];
+      summarized[i] = count;
+      total += interval[i];
+      if (interval[i] > 0) {
+        highest = i;
+      }
+    }
+    if (total == 0) {
+      return new Summary(0, 0, 0, 0);
+    }
+    return new Summary(total, percentile(total, 0.5), percentile(total, 0.99),
+        highestValueIn(highest));
+  }
+
+  /**
+   * @return the highest value counted in the same bucket as the value at the percentile
+   */
+  private long percentile(long total, double percentile) {
+    long rank = Math.max(1, (long) Math.ceil(total * percentile));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += interval[i];
+      if (seen >= rank) {
+        return highestValueIn(i);
+      }
+    }
+    return highestValueIn(BUCKETS - 1);
+  }
+
+  /**
+   * Values below SUB_BUCKETS get a bucket each. Above that, each power of two is split into
+   * SUB_BUCKETS equal buckets.
+   */
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) Math.max(0, value);
+    }
+    int powerOfTwo = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int shift = powerOfTwo - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+  }
+
+  static long highestValueIn(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    int subBucket = index % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * The values recorded in some interval. Percentiles are rounded up to the top of their bucket.
+   */
+  public static class Summary {
+
+    private final long count;
+    private final long median;
+    private final long p99;
+    private final long max;
+
+    private Summary(long count, long median, long p99, long max) {
+      this.count = count;
+      this.median = median;
+      this.p99 = p99;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMedian() {
+      return median;
+    }
+
+    public long getP99() {
+      return p99;
+    }
+
+    public long getMax() {
+      return max;
+    }
+  }
+}
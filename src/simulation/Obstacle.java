@@ -0,0 +1,36 @@
+package simulation;
+
+/**
+ * Something solid that particles bounce off of, for an ObstacleField. Only asked about when it's
+ * baked into the field, so it can be as slow to measure as it needs to be.
+ */
+public interface Obstacle {
+
+  /**
+   * @return how far a point is from the edge of the obstacle. Negative inside of it
+   */
+  double signedDistance(double x, double y);
+
+  /**
+   * Measures lots of points at once. Override it when the obstacle can do that faster than one
+   * point at a time.
+   *
+   * @param distances set to the signed distance of each point, at the same index as the point
+   */
+  default void signedDistances(double[] x, double[] y, int count, double[] distances) {
+    for (int i = 0; i < count; i++) {
+      distances[i] = signedDistance(x[i], y[i]);
+    }
+  }
+
+  /**
+   * @return the lowest x value of any part of the obstacle
+   */
+  double getMinX();
+
+  double getMinY();
+
+  double getMaxX();
+
+  double getMaxY();
+}
@@ -0,0 +1,245 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static obstacles, baked into a grid of signed distances so a particle can find how far it is
+ * from the nearest one with a single lookup, however many obstacles there are and however many
+ * sides they have. Each point of the grid also keeps the direction away from the obstacle there.
+ *
+ * <p>Only the area around each obstacle is baked, and only the area around an obstacle that
+ * changed is baked again. Points further than BAND from every obstacle just hold BAND. Only
+ * change the obstacles between ticks.
+ */
+public class ObstacleField {
+
+  //Distances are only worked out this close to an obstacle. It has to be more than any radius
+  private static final double BAND = 64;
+  private static final double CELL_SIZE = 4;
+  //How far apart the distances are measured to find the direction away from an obstacle
+  private static final double GRADIENT_STEP = CELL_SIZE / 4;
+
+  private final int columns;
+  private final int rows;
+  //At every corner of every cell, row by row
+  private final float[] distance;
+  private final float[] normalX;
+  private final float[] normalY;
+
+  private final List<Obstacle> obstacles = new ArrayList<>();
+  //Where each obstacle was when it was last baked, to clear it from there when it moves
+  private final Map<Obstacle, double[]> bakedBounds = new IdentityHashMap<>();
+  private final List<Obstacle> nearby = new ArrayList<>();
+
+  //A row of points at a time is handed to the obstacles to measure, along with the points a
+  //little to either side of them for finding the direction away from the obstacle
+  private final double[] pointX;
+  private final double[] leftX;
+  private final double[] rightX;
+  private final double[] pointY;
+  private final double[] aboveY;
+  private final double[] belowY;
+  private final double[] measured;
+  private final double[] ahead;
+  private final double[] behind;
+  private final double[] closest;
+  private final boolean[] closer;
+  private final double[] gradientX;
+  private final double[] gradientY;
+
+  public ObstacleField(double width, double height) {
+    columns = (int) Math.ceil(width / CELL_SIZE) + 1;
+    rows = (int) Math.ceil(height / CELL_SIZE) + 1;
+    distance = new float[columns * rows];
+    normalX = new float[columns * rows];
+    normalY = new float[columns * rows];
+    Arrays.fill(distance, (float) BAND);
+
+    pointX = new double[columns];
+    leftX = new double[columns];
+    rightX = new double[columns];
+    pointY = new double[columns];
+    aboveY = new double[columns];
+    belowY = new double[columns];
+    measured = new double[columns];
+    ahead = new double[columns];
+    behind = new double[columns];
+    closest = new double[columns];
+    closer = new boolean[columns];
+    gradientX = new double[columns];
+    gradientY = new double[columns];
+  }
+
+  public boolean isEmpty() {
+    return obstacles.isEmpty();
+  }
+
+  public List<Obstacle> getObstacles() {
+    return obstacles;
+  }
+
+  public void add(Obstacle obstacle) {
+    obstacles.add(obstacle);
+    double[] bounds = boundsOf(obstacle);
+    bakedBounds.put(obstacle, bounds);
+    bake(bounds);
+  }
+
+  public void remove(Obstacle obstacle) {
+    if (obstacles.remove(obstacle)) {
+      bake(bakedBounds.remove(obstacle));
+    }
+  }
+
+  public void clear() {
+    obstacles.clear();
+    bakedBounds.clear();
+    Arrays.fill(distance, (float) BAND);
+    Arrays.fill(normalX, 0);
+    Arrays.fill(normalY, 0);
+  }
+
+  /**
+   * Bakes an obstacle again after it moved or changed shape, where it was and where it is now.
+   */
+  public void update(Obstacle obstacle) {
+    double[] old = bakedBounds.get(obstacle);
+    if (old == null) {
+      return;
+    }
+    double[] bounds = boundsOf(obstacle);
+    bakedBounds.put(obstacle, bounds);
+    bake(old);
+    bake(bounds);
+  }
+
+  /**
+   * Looks up how far a point is from the nearest obstacle, between the points of the grid.
+   *
+   * @param normal set to the direction away from the nearest obstacle, or zero if it's further
+   *     than any particle can reach
+   * @return how far the point is from the nearest obstacle, negative inside of one
+   */
+  public double sample(double x, double y, CartesianVector normal) {
+    double column = Math.max(0, Math.min(columns - 1.001, x / CELL_SIZE));
+    double row = Math.max(0, Math.min(rows - 1.001, y / CELL_SIZE));
+    int left = (int) column;
+    int top = (int) row;
+    double right = column - left;
+    double bottom = row - top;
+
+    int i = top * columns + left;
+    double topLeft = (1 - right) * (1 - bottom);
+    double topRight = right * (1 - bottom);
+    double bottomLeft = (1 - right) * bottom;
+    double bottomRight = right * bottom;
+    normal.set(
+        normalX[i] * topLeft + normalX[i + 1] * topRight + normalX[i + columns] * bottomLeft
+            + normalX[i + columns + 1] * bottomRight,
+        normalY[i] * topLeft + normalY[i + 1] * topRight + normalY[i + columns] * bottomLeft
+            + normalY[i + columns + 1] * bottomRight);
+    double length = Math.hypot(normal.getX(), normal.getY());
+    if (length > 0) {
+      normal.scale(1 / length);
+    }
+    return distance[i] * topLeft + distance[i + 1] * topRight + distance[i + columns] * bottomLeft
+        + distance[i + columns + 1] * bottomRight;
+  }
+
+  /**
+   * Works out the distances again for every point of the grid close enough to the bounds to be
+   * changed by them.
+   */
+  private void bake(double[] bounds) {
+    double minX = bounds[0] - BAND;
+    double minY = bounds[1] - BAND;
+    double maxX = bounds[2] + BAND;
+    double maxY = bounds[3] + BAND;
+    //Only measure the obstacles that can reach this area
+    nearby.clear();
+    for (Obstacle obstacle : obstacles) {
+      double[] other = bakedBounds.get(obstacle);
+      if (other[0] - BAND <= maxX && other[2] + BAND >= minX
+          && other[1] - BAND <= maxY && other[3] + BAND >= minY) {
+        nearby.add(obstacle);
+      }
+    }
+
+    int firstColumn = Math.max(0, (int) Math.floor(minX / CELL_SIZE));
+    int lastColumn = Math.min(columns - 1, (int) Math.ceil(maxX / CELL_SIZE));
+    int firstRow = Math.max(0, (int) Math.floor(minY / CELL_SIZE));
+    int lastRow = Math.min(rows - 1, (int) Math.ceil(maxY / CELL_SIZE));
+    int length = lastColumn - firstColumn + 1;
+    if (length <= 0) {
+      return;
+    }
+    for (int k = 0; k < length; k++) {
+      pointX[k] = (firstColumn + k) * CELL_SIZE;
+      leftX[k] = pointX[k] - GRADIENT_STEP;
+      rightX[k] = pointX[k] + GRADIENT_STEP;
+    }
+    for (int row = firstRow; row <= lastRow; row++) {
+      bakeRow(row, firstColumn, length);
+    }
+  }
+
+  /**
+   * Measures a row of points against every nearby obstacle, one obstacle at a time, so obstacles
+   * that can measure lots of points at once get to.
+   */
+  private void bakeRow(int row, int firstColumn, int length) {
+    double y = row * CELL_SIZE;
+    Arrays.fill(pointY, 0, length, y);
+    Arrays.fill(aboveY, 0, length, y - GRADIENT_STEP);
+    Arrays.fill(belowY, 0, length, y + GRADIENT_STEP);
+    Arrays.fill(closest, 0, length, BAND);
+    Arrays.fill(gradientX, 0, length, 0);
+    Arrays.fill(gradientY, 0, length, 0);
+    for (Obstacle obstacle : nearby) {
+      obstacle.signedDistances(pointX, pointY, length, measured);
+      boolean closestToAny = false;
+      for (int k = 0; k < length; k++) {
+        closer[k] = measured[k] < closest[k];
+        if (closer[k]) {
+          closest[k] = measured[k];
+          closestToAny = true;
+        }
+      }
+      if (!closestToAny) {
+        continue;
+      }
+      //The distance grows fastest in the direction away from the obstacle
+      obstacle.signedDistances(rightX, pointY, length, ahead);
+      obstacle.signedDistances(leftX, pointY, length, behind);
+      for (int k = 0; k < length; k++) {
+        if (closer[k]) {
+          gradientX[k] = ahead[k] - behind[k];
+        }
+      }
+      obstacle.signedDistances(pointX, belowY, length, ahead);
+      obstacle.signedDistances(pointX, aboveY, length, behind);
+      for (int k = 0; k < length; k++) {
+        if (closer[k]) {
+          gradientY[k] = ahead[k] - behind[k];
+        }
+      }
+    }
+
+    int i = row * columns + firstColumn;
+    for (int k = 0; k < length; k++) {
+      distance[i + k] = (float) closest[k];
+      double gradient = Math.hypot(gradientX[k], gradientY[k]);
+      normalX[i + k] = gradient > 0 ? (float) (gradientX[k] / gradient) : 0;
+      normalY[i + k] = gradient > 0 ? (float) (gradientY[k] / gradient) : 0;
+    }
+  }
+
+  private static double[] boundsOf(Obstacle obstacle) {
+    return new double[]{obstacle.getMinX(), obstacle.getMinY(), obstacle.getMaxX(),
+        obstacle.getMaxY()};
+  }
+}
@@ -0,0 +1,114 @@
+package simulation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a loop over indices into chunks that run on a shared ForkJoinPool. Only use it for loops
+ * where every index is independent of the others, so the result doesn't depend on how the loop
+ * was split.
+ *
+ * <p>The number of threads comes from the gravity.parallelism system property, defaulting to the
+ * number of cores. A parallelism of 1 runs every loop on the calling thread.
+ */
+public final class ParallelLoop {
+
+  private static volatile ForkJoinPool pool =
+      createPool(Integer.getInteger("gravity.parallelism",
+          Runtime.getRuntime().availableProcessors()));
+
+  private ParallelLoop() {
+  }
+
+  /**
+   * @return how many threads loops are split across
+   */
+  public static int getParallelism() {
+    ForkJoinPool current = pool;
+    return current == null ? 1 : current.getParallelism();
+  }
+
+  /**
+   * Sets how many threads loops are split across. Loops that are already running finish on the
+   * old threads.
+   */
+  public static synchronized void setParallelism(int parallelism) {
+    ForkJoinPool old = pool;
+    pool = createPool(parallelism);
+    if (old != null) {
+      old.shutdown();
+    }
+  }
+
+  /**
+   * Runs body over [0, count), splitting it into chunks of at least minChunk indices. The body
+   * may call forRange itself.
+   */
+  public static void forRange(int count, int minChunk, RangeBody body) {
+    ForkJoinPool current = pool;
+    if (current == null || count <= minChunk) {
+      body.run(0, count);
+      return;
+    }
+    //A few chunks per thread, so that a slow chunk doesn't hold everything up
+    int chunk = Math.max(minChunk, count / (current.getParallelism() * 4));
+    RangeTask task = new RangeTask(0, count, chunk, body);
+    if (ForkJoinTask.getPool() == current) {
+      //Already running in the pool, so split the work from here instead of waiting on the pool
+      task.invoke();
+    } else {
+      current.invoke(task);
+    }
+  }
+
+  private static ForkJoinPool createPool(int parallelism) {
+    if (parallelism <= 1) {
+      return null;
+    }
+    return new ForkJoinPool(parallelism, pool -> {
+      ForkJoinWorkerThread thread =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("Gravity Worker " + thread.getPoolIndex());
+      thread.setDaemon(true);
+      return thread;
+    }, null, false);
+  }
+
+  /**
+   * The body of a loop, run over the indices in [from, to).
+   */
+  @FunctionalInterface
+  public interface RangeBody {
+
+    void run(int from, int to);
+  }
+
+  private static class RangeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final int chunk;
+    private final RangeBody body;
+
+    RangeTask(int from, int to, int chunk, RangeBody body) {
+      this.from = from;
+      this.to = to;
+      this.chunk = chunk;
+      this.body = body;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= chunk) {
+        body.run(from, to);
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new RangeTask(from, middle, chunk, body), new RangeTask(middle, to, chunk, body));
+    }
+  }
+}
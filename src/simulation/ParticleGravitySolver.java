@@ -0,0 +1,13 @@
+package simulation;
+
+/**
+ * How SourceGravity finds the pull of the particles on each other
+ */
+public enum ParticleGravitySolver {
+  //A BarnesHutTree, O(n log n), and as accurate as its opening angle up close
+  BARNES_HUT,
+  //A ParticleMesh over the window and a little past it, O(n + G log G), blurred up close
+  ISOLATED_MESH,
+  //A ParticleMesh over the window, repeating it in every direction like particles that WRAP
+  PERIODIC_MESH
+}
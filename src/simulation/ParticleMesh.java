@@ -0,0 +1,423 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * Finds the gravity the particles exert on each other on a grid, in O(n + G log G) for a grid of
+ * G points, where the BarnesHutTree takes O(n log n). Each tick every particle's mass is spread
+ * over the four grid points around it (cloud in cell), the potential is found from the mass by a
+ * convolution done with fast Fourier transforms, and the pull at each grid point is the slope of
+ * the potential. The pull on a particle is blended back from the same four grid points, so a
+ * particle doesn't pull on itself.
+ *
+ * <p>Particles pull with the same softened inverse square law as in the tree, not with the
+ * logarithmic potential of the 2D Poisson equation, so the two can be compared. The potential of
+ * one particle is put on the grid and transformed once, and each tick's mass is convolved with
+ * it. Anything closer than a grid point or two comes out blurred.
+ *
+ * <p>A periodic mesh covers exactly the space particles that WRAP go around, the window and a few
+ * pixels past each edge, which repeats in every direction, and each particle pulls from its
+ * closest copy. An isolated mesh covers
+ * the window and a little past each edge, and the transform is twice its size so the pull doesn't
+ * wrap around. Particles past the isolated mesh don't pull, and are pulled by the mesh as if its
+ * mass were all at its center of mass.
+ *
+ * <p>The mass and the potential are real, so the rows are transformed two at a time, one as the
+ * real part and one as the imaginary part, and only the first half of the columns are
+ * transformed, since the other half mirror them. That's half the work of transforming them as
+ * complex numbers. The transforms are split across threads by rows and then by columns. Once
+ * prepared, the mesh is read-only, so any number of threads can find the acceleration from it.
+ */
+public class ParticleMesh {
+
+  //The most space there can be between grid points
+  private static final double CELL_SIZE = 12;
+  //How much of the window an isolated mesh reaches past each edge
+  private static final double MARGIN = 0.125;
+  //How many columns are copied out and transformed together, so each row is read a cache line at
+  //a time instead of a value at a time
+  private static final int COLUMN_BLOCK = 8;
+  //The fewest rows, or blocks of columns, worth handing to another thread
+  private static final int MIN_LINES = 4;
+
+  private final boolean periodic;
+  private final double left;
+  private final double top;
+  private final double cellWidth;
+  private final double cellHeight;
+  //The grid points the mass is spread over
+  private final int columns;
+  private final int rows;
+  //The size of the transform, which is twice the grid if it's isolated
+  private final int transformColumns;
+  private final int transformRows;
+  //The columns of the transform that aren't mirrors of others
+  private final int halfColumns;
+  private final FastFourierTransform rowTransform;
+  private final FastFourierTransform columnTransform;
+  private final ThreadLocal<double[][]> columnScratch;
+
+  //The mass, then its transform, then the potential, over the whole transform
+  private final double[] real;
+  private final double[] imaginary;
+  //The transform of the potential of one particle, with G and its mass left out. It's even, so
+  //its transform is real
+  private final double[] kernel;
+  private double kernelSoftening = Double.NaN;
+  //The acceleration at each grid point. Positive y is up
+  private final double[] fieldX;
+  private final double[] fieldY;
+
+  //G times the mass of a particle
+  private double strength;
+  private double softening;
+  //How many particles are on the mesh, and their center of mass, to pull things past its edges
+  private int meshCount;
+  private double centerX;
+  private double centerY;
+
+  /**
+   * @param width the width of the window
+   * @param height the height of the window
+   * @param periodic whether the window repeats, instead of being alone
+   */
+  public ParticleMesh(double width, double height, boolean periodic) {
+    this.periodic = periodic;
+    if (periodic) {
+      //The grid has to repeat exactly as often as wrapping particles do, and the transform has to
+      //be a power of two
+      double wrapWidth = width + 2 * ParticlePhysics.WRAP_MARGIN;
+      double wrapHeight = height + 2 * ParticlePhysics.WRAP_MARGIN;
+      left = -ParticlePhysics.WRAP_MARGIN;
+      top = -ParticlePhysics.WRAP_MARGIN;
+      columns = powerOfTwoAtLeast(wrapWidth / CELL_SIZE);
+      rows = powerOfTwoAtLeast(wrapHeight / CELL_SIZE);
+      cellWidth = wrapWidth / columns;
+      cellHeight = wrapHeight / rows;
+      transformColumns = columns;
+      transformRows = rows;
+    } else {
+      left = -width * MARGIN;
+      top = -height * MARGIN;
+      columns = (int) Math.ceil(width * (1 + 2 * MARGIN) / CELL_SIZE) + 1;
+      rows = (int) Math.ceil(height * (1 + 2 * MARGIN) / CELL_SIZE) + 1;
+      cellWidth = width * (1 + 2 * MARGIN) / (columns - 1);
+      cellHeight = height * (1 + 2 * MARGIN) / (rows - 1);
+      //Room for every distance between two grid points both ways, so none wrap onto another
+      transformColumns = powerOfTwoAtLeast(2 * columns - 1);
+      transformRows = powerOfTwoAtLeast(2 * rows - 1);
+    }
+    halfColumns = transformColumns / 2 + 1;
+    rowTransform = new FastFourierTransform(transformColumns);
+    columnTransform = new FastFourierTransform(transformRows);
+    int blockSize = COLUMN_BLOCK * transformRows;
+    columnScratch = ThreadLocal.withInitial(
+        () -> new double[][]{new double[blockSize], new double[blockSize]});
+
+    real = new double[transformColumns * transformRows];
+    imaginary = new double[transformColumns * transformRows];
+    kernel = new double[transformColumns * transformRows];
+    fieldX = new double[columns * rows];
+    fieldY = new double[columns * rows];
+  }
+
+  public boolean isPeriodic() {
+    return periodic;
+  }
+
+  /**
+   * @return how many grid points there are across
+   */
+  public int getColumns() {
+    return columns;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Finds the gravity on the grid from the current positions of the particles. Must not be called
+   * while the acceleration is being found.
+   *
+   * @param gravityConstant G
+   * @param particleMass the mass of every particle
+   * @param softening keeps the acceleration finite when particles get close
+   */
+  public void prepare(ParticleStore store, double gravityConstant, double particleMass,
+      double softening) {
+    this.strength = gravityConstant * particleMass;
+    this.softening = softening;
+    if (softening != kernelSoftening) {
+      bakeKernel(softening);
+    }
+
+    spreadMass(store);
+    if (meshCount == 0) {
+      Arrays.fill(fieldX, 0);
+      Arrays.fill(fieldY, 0);
+      return;
+    }
+    //Past the grid the padding is all 0, so those rows don't need transforming on the way in,
+    //and aren't needed on the way out
+    transformRows(rows, false);
+    transformColumns(false);
+    for (int row = 0; row < transformRows; row++) {
+      for (int i = row * transformColumns; i < row * transformColumns + halfColumns; i++) {
+        real[i] *= kernel[i];
+        imaginary[i] *= kernel[i];
+      }
+    }
+    transformColumns(true);
+    transformRows(rows, true);
+    findField();
+  }
+
+  /**
+   * Finds the acceleration from every particle's gravity at a point. Doesn't allocate.
+   *
+   * @param acceleration the acceleration is added to this. Positive y is up
+   */
+  public void addAcceleration(double x, double y, CartesianVector acceleration) {
+    double across = (x - left) / cellWidth;
+    double down = (y - top) / cellHeight;
+    if (periodic) {
+      across -= Math.floor(across / columns) * columns;
+      down -= Math.floor(down / rows) * rows;
+    } else if (!(across >= 0 && across < columns - 1 && down >= 0 && down < rows - 1)) {
+      addPullFromCenter(x, y, acceleration);
+      return;
+    }
+    int column = (int) across;
+    int row = (int) down;
+    double right = across - column;
+    double below = down - row;
+    //Rounding can land a wrapped point right on the far edge, which is the near edge again
+    column = column == columns ? 0 : column;
+    row = row == rows ? 0 : row;
+    int nextColumn = column + 1 == columns ? 0 : column + 1;
+    int nextRow = row + 1 == rows ? 0 : row + 1;
+
+    int topLeft = row * columns + column;
+    int topRight = row * columns + nextColumn;
+    int bottomLeft = nextRow * columns + column;
+    int bottomRight = nextRow * columns + nextColumn;
+    double ax = (fieldX[topLeft] * (1 - right) + fieldX[topRight] * right) * (1 - below)
+        + (fieldX[bottomLeft] * (1 - right) + fieldX[bottomRight] * right) * below;
+    double ay = (fieldY[topLeft] * (1 - right) + fieldY[topRight] * right) * (1 - below)
+        + (fieldY[bottomLeft] * (1 - right) + fieldY[bottomRight] * right) * below;
+    acceleration.add(ax, ay);
+  }
+
+  /**
+   * Pulls a point past the edges of an isolated mesh toward its center of mass.
+   */
+  private void addPullFromCenter(double x, double y, CartesianVector acceleration) {
+    if (meshCount == 0) {
+      return;
+    }
+    double dX = centerX - x;
+    double dY = centerY - y;
+    double distanceSquared = dX * dX + dY * dY + softening * softening;
+    double scale = strength * meshCount / (distanceSquared * Math.sqrt(distanceSquared));
+    //Screen y is down, but accelerations are positive up
+    acceleration.add(dX * scale, -dY * scale);
+  }
+
+  /**
+   * Puts the potential of one particle, at the top left grid point, on the transform's grid and
+   * transforms it. Distances past halfway across are measured the other way around, which is the
+   * closest copy on a periodic mesh, and out of reach of the grid on an isolated one.
+   */
+  private void bakeKernel(double softening) {
+    for (int row = 0; row < transformRows; row++) {
+      double dY = Math.min(row, transformRows - row) * cellHeight;
+      for (int column = 0; column < transformColumns; column++) {
+        double dX = Math.min(column, transformColumns - column) * cellWidth;
+        double distanceSquared = dX * dX + dY * dY + softening * softening;
+        //A particle's own potential is flat, so it can be anything that isn't infinite
+        real[row * transformColumns + column] =
+            distanceSquared > 0 ? -1 / Math.sqrt(distanceSquared) : 0;
+      }
+    }
+    transformRows(transformRows, false);
+    transformColumns(false);
+    //Dividing by the size here undoes the scaling of the transform and its inverse. Only the
+    //first half of the columns are used
+    double size = (double) transformColumns * transformRows;
+    for (int i = 0; i < kernel.length; i++) {
+      kernel[i] = real[i] / size;
+    }
+    kernelSoftening = softening;
+  }
+
+  /**
+   * Spreads each particle's mass over the four grid points around it, by how close it is to each.
+   */
+  private void spreadMass(ParticleStore store) {
+    Arrays.fill(real, 0);
+    Arrays.fill(imaginary, 0);
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double sumX = 0;
+    double sumY = 0;
+    meshCount = 0;
+    for (int i = 0; i < store.size(); i++) {
+      double across = (x[i] - left) / cellWidth;
+      double down = (y[i] - top) / cellHeight;
+      if (periodic) {
+        across -= Math.floor(across / columns) * columns;
+        down -= Math.floor(down / rows) * rows;
+      } else if (!(across >= 0 && across < columns - 1 && down >= 0 && down < rows - 1)) {
+        continue;
+      }
+      int column = (int) across;
+      int row = (int) down;
+      double right = across - column;
+      double below = down - row;
+      column = column == columns ? 0 : column;
+      row = row == rows ? 0 : row;
+      int nextColumn = column + 1 == columns ? 0 : column + 1;
+      int nextRow = row + 1 == rows ? 0 : row + 1;
+
+      real[row * transformColumns + column] += (1 - right) * (1 - below);
+      real[row * transformColumns + nextColumn] += right * (1 - below);
+      real[nextRow * transformColumns + column] += (1 - right) * below;
+      real[nextRow * transformColumns + nextColumn] += right * below;
+      sumX += x[i];
+      sumY += y[i];
+      meshCount++;
+    }
+    centerX = meshCount == 0 ? 0 : sumX / meshCount;
+    centerY = meshCount == 0 ? 0 : sumY / meshCount;
+  }
+
+  /**
+   * Takes the slope of the potential at every grid point, from the points on either side. At the
+   * edges of an isolated mesh there's only one side to go by.
+   */
+  private void findField() {
+    ParallelLoop.forRange(rows, MIN_LINES, (from, to) -> {
+      for (int row = from; row < to; row++) {
+        int above = row > 0 ? row - 1 : periodic ? rows - 1 : row;
+        int below = row < rows - 1 ? row + 1 : periodic ? 0 : row;
+        double down = (periodic ? 2 : below - above) * cellHeight;
+        for (int column = 0; column < columns; column++) {
+          int before = column > 0 ? column - 1 : periodic ? columns - 1 : column;
+          int after = column < columns - 1 ? column + 1 : periodic ? 0 : column;
+          double across = (periodic ? 2 : after - before) * cellWidth;
+          double slopeX = (real[row * transformColumns + after]
+              - real[row * transformColumns + before]) / across;
+          double slopeY = (real[below * transformColumns + column]
+              - real[above * transformColumns + column]) / down;
+          //Gravity goes down the slope. Screen y is down, but accelerations are positive up
+          fieldX[row * columns + column] = -slopeX * strength;
+          fieldY[row * columns + column] = slopeY * strength;
+        }
+      }
+    });
+  }
+
+  /**
+   * Transforms at least the first count rows of the transform's grid, a pair at a time. On the
+   * way in the rows are real, and come out as the first half of their frequencies. On the way
+   * out the rows are the first half of their frequencies, and come out real.
+   */
+  private void transformRows(int count, boolean inverse) {
+    ParallelLoop.forRange((count + 1) / 2, MIN_LINES, (from, to) -> {
+      for (int pair = from; pair < to; pair++) {
+        int first = 2 * pair * transformColumns;
+        int second = first + transformColumns;
+        if (inverse) {
+          joinFrequencies(first, second);
+          rowTransform.transform(real, imaginary, first, true);
+          System.arraycopy(imaginary, first, real, second, transformColumns);
+        } else {
+          System.arraycopy(real, second, imaginary, first, transformColumns);
+          rowTransform.transform(real, imaginary, first, false);
+          splitFrequencies(first, second);
+        }
+      }
+    });
+  }
+
+  /**
+   * Separates the frequencies of two real rows that were transformed together, the first as the
+   * real part and the second as the imaginary part. The frequencies of a real row mirror each
+   * other, f(-k) being the conjugate of f(k), and that tells the two apart.
+   */
+  private void splitFrequencies(int first, int second) {
+    for (int k = 0; k < halfColumns; k++) {
+      int mirror = (transformColumns - k) & (transformColumns - 1);
+      double real0 = real[first + k];
+      double imaginary0 = imaginary[first + k];
+      double mirrorReal = real[first + mirror];
+      double mirrorImaginary = imaginary[first + mirror];
+      real[first + k] = (real0 + mirrorReal) / 2;
+      imaginary[first + k] = (imaginary0 - mirrorImaginary) / 2;
+      real[second + k] = (imaginary0 + mirrorImaginary) / 2;
+      imaginary[second + k] = (mirrorReal - real0) / 2;
+    }
+  }
+
+  /**
+   * Puts the first half of the frequencies of two real rows back together into the first row,
+   * the first as the real part and the second as the imaginary part, so that transforming it
+   * back gives both rows at once. The second half is filled in from the mirrored first half.
+   */
+  private void joinFrequencies(int first, int second) {
+    for (int k = halfColumns; k < transformColumns; k++) {
+      int mirror = first + transformColumns - k;
+      int mirrorSecond = second + transformColumns - k;
+      real[first + k] = real[mirror] + imaginary[mirrorSecond];
+      imaginary[first + k] = real[mirrorSecond] - imaginary[mirror];
+    }
+    for (int k = 0; k < halfColumns; k++) {
+      double real0 = real[first + k];
+      real[first + k] = real0 - imaginary[second + k];
+      imaginary[first + k] += real[second + k];
+    }
+  }
+
+  /**
+   * Transforms the first half of the columns of the transform's grid, copying a block of them
+   * out next to each other first.
+   */
+  private void transformColumns(boolean inverse) {
+    int blocks = (halfColumns + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+    ParallelLoop.forRange(blocks, MIN_LINES, (from, to) -> {
+      double[][] scratch = columnScratch.get();
+      double[] blockReal = scratch[0];
+      double[] blockImaginary = scratch[1];
+      for (int block = from; block < to; block++) {
+        int first = block * COLUMN_BLOCK;
+        int width = Math.min(COLUMN_BLOCK, halfColumns - first);
+        for (int row = 0; row < transformRows; row++) {
+          int index = row * transformColumns + first;
+          for (int k = 0; k < width; k++) {
+            blockReal[k * transformRows + row] = real[index + k];
+            blockImaginary[k * transformRows + row] = imaginary[index + k];
+          }
+        }
+        for (int k = 0; k < width; k++) {
+          columnTransform.transform(blockReal, blockImaginary, k * transformRows, inverse);
+        }
+        for (int row = 0; row < transformRows; row++) {
+          int index = row * transformColumns + first;
+          for (int k = 0; k < width; k++) {
+            real[index + k] = blockReal[k * transformRows + row];
+            imaginary[index + k] = blockImaginary[k * transformRows + row];
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * @return the smallest power of two that's at least count, and at least 2
+   */
+  private static int powerOfTwoAtLeast(double count) {
+    int atLeast = (int) Math.ceil(count);
+    return atLeast <= 2 ? 2 : Integer.highestOneBit(atLeast - 1) << 1;
+  }
+}
@@ -0,0 +1,793 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * Steps the particles in a World. This is what used to live in GravityParticle, working on
+ * indices instead of Circles. The passes the World's Integrator moves the particles with are
+ * here too.
+ */
+class ParticlePhysics implements Integrator.Motion {
+
+  //Fewer particles than this aren't worth handing to another thread
+  private static final int MIN_INTEGRATION_CHUNK = 1024;
+  //How many particles a pass moves and then accelerates at a time, small enough that they're
+  //still in the cache for the second half
+  private static final int KERNEL_BLOCK = 256;
+  //A particle has to head into a sleeping one this many times the sleep speed to wake it up
+  private static final double WAKE_SPEED_SCALE = 4;
+  //How far apart, as a multiple of their radii, sleeping particles still count as touching
+  private static final double CONTACT_SLACK = 1.1;
+  //How much of the speed particles resting against each other lose sliding along each other
+  private static final double RESTING_FRICTION = 0.5;
+  //How far into a sleeping particle, as a part of its radius, a particle has to be to be wedged
+  private static final double WEDGED_OVERLAP = 0.25;
+  //Fast particles stop just inside touching distance, so the next collision pass sees them touch
+  private static final double IMPACT_DEPTH = 0.99;
+  //How far past an edge a particle that WRAPs goes before it comes back on the other side
+  static final double WRAP_MARGIN = 4;
+
+  private final World world;
+  private final ParticleStore store;
+  private final TickProfile profile;
+  private final SpatialHashGrid collisionGrid = new SpatialHashGrid();
+  private final SweepGrid sweepGrid = new SweepGrid();
+  //Where each worker thread puts the gravity it looks up, so nothing is allocated per particle
+  private final ThreadLocal<CartesianVector> gravityScratch =
+      ThreadLocal.withInitial(CartesianVector::new);
+  private final ThreadLocal<CartesianVector> normalScratch =
+      ThreadLocal.withInitial(CartesianVector::new);
+  private final ObstacleField obstacles;
+  //Moves the particles a vector at a time, or null to move them one at a time
+  private final IntegrationKernel kernel;
+
+  private final double windowWidth;
+  private final double windowHeight;
+  //The world's settings, read once at the start of each tick
+  private double friction;
+  private double maxVelocity;
+  private double timeStep;
+  private GravityModel gravity;
+  private Integrator integrator;
+  private int substeps;
+  //How many ticks the pass that's running moves and accelerates the particles by
+  private double passTime;
+
+  //The gravity each particle was last kicked by, for kickAgain. The particles from
+  //rememberedCount on don't have any yet
+  private double[] rememberedX = new double[0];
+  private double[] rememberedY = new double[0];
+  private int rememberedCount;
+  private long rememberedGeneration;
+
+  //How far each particle that collides will move this step, on the screen, stopping at the edges
+  //it can't go past
+  private double[] moveX = new double[0];
+  private double[] moveY = new double[0];
+  //How far through the step each particle gets before it runs into another, from 0 to 1
+  private double[] timeOfImpact = new double[0];
+  private boolean anyImpacts;
+  private int ticksSinceCollisions;
+
+  //Sleeping. Positions at the start of the tick, to see how far each particle moved
+  private boolean trackingSleep;
+  private double wakeSpeed;
+  private double[] startX = new double[0];
+  private double[] startY = new double[0];
+  //Particles woken this tick whose sleeping neighbors haven't been woken yet
+  private int[] wakeQueue = new int[0];
+  private int wakeQueueSize;
+
+  ParticlePhysics(World world) {
+    this.world = world;
+    this.store = world.getParticles();
+    this.profile = world.getProfile();
+    this.obstacles = world.getObstacles();
+    this.windowWidth = world.getWidth();
+    this.windowHeight = world.getHeight();
+    this.kernel = IntegrationKernel.load(windowWidth, windowHeight);
+  }
+
+  /**
+   * @return how many particles are moved at a time, 1 without the Vector API
+   */
+  int getIntegrationLanes() {
+    return kernel == null ? 1 : kernel.getLanes();
+  }
+
+  /**
+   * Moves every particle forward one tick. Collisions touch pairs of particles, so they are
+   * handled one particle at a time, and so is stopping fast particles before they pass through
+   * each other. After that each particle only depends on itself, so the integrator's passes
+   * update the positions and velocities in parallel.
+   */
+  void step() {
+    friction = world.getFriction();
+    maxVelocity = world.getMaxVelocity();
+    timeStep = world.getTimeStep();
+    gravity = world.getGravity();
+    integrator = world.getIntegrator();
+    substeps = world.isHalvingSubsteps()
+        ? Math.max(1, world.getSubsteps() / 2) : world.getSubsteps();
+    trackingSleep = world.getSleepSpeed() > 0;
+    //Resting particles are nudged into each other by a step's worth of gravity, which is more the
+    //longer the step
+    wakeSpeed = world.getSleepSpeed() * WAKE_SPEED_SCALE * timeStep;
+    boolean changed = world.takeWakeRequest();
+    if (changed || (!trackingSleep && store.getSleepingCount() > 0)) {
+      store.wakeAll();
+    }
+    if (changed || store.getGeneration() != rememberedGeneration) {
+      //The gravity or the particles were changed, so the gravity they remember is out of date
+      rememberedCount = 0;
+      rememberedGeneration = store.getGeneration();
+    }
+    if (store.size() > 0 && store.getSleepingCount() == store.size()) {
+      //Everything is asleep, so there's nothing to do
+      return;
+    }
+
+    if (trackingSleep) {
+      startTrackingSleep();
+    }
+    long start = profile.start();
+    if (++ticksSinceCollisions >= world.getCollisionInterval()) {
+      ticksSinceCollisions = 0;
+      handleCollisions();
+      if (wakeQueueSize > 0) {
+        wakeTouchingParticles();
+      }
+    }
+    anyImpacts = findTimesOfImpact();
+    profile.stop(TickProfile.Phase.COLLIDE, start);
+
+    start = profile.start();
+    ensureRememberedCapacity(store.size());
+    for (int substep = 0; substep < substeps; substep++) {
+      integrator.advance(this, timeStep / substeps);
+    }
+    profile.stop(TickProfile.Phase.INTEGRATE, start);
+    if (trackingSleep) {
+      putStillParticlesToSleep();
+    }
+  }
+
+  /**
+   * Separates every pair of colliding particles and trades their velocities.
+   */
+  void handleCollisions() {
+    collisionGrid.rebuild(store, windowWidth, windowHeight, anyParticleWraps());
+    for (int i = 0; i < store.size(); i++) {
+      handleCollision(i);
+    }
+  }
+
+  @Override
+  public void drift(double time) {
+    passTime = time;
+    forBlocks(0, store.size(), this::moveBlock);
+  }
+
+  @Override
+  public void kick(double time) {
+    passTime = time;
+    gravity.prepare(store);
+    forBlocks(0, store.size(), (from, to) -> {
+      findGravity(from, to);
+      kickBlock(from, to);
+    });
+    rememberedCount = store.size();
+  }
+
+  @Override
+  public void kickAgain(double time) {
+    passTime = time;
+    if (rememberedCount < store.size()) {
+      gravity.prepare(store);
+      forBlocks(rememberedCount, store.size(), this::findGravity);
+      rememberedCount = store.size();
+    }
+    forBlocks(0, store.size(), this::kickBlock);
+  }
+
+  @Override
+  public void driftAndKick(double time) {
+    passTime = time;
+    gravity.prepare(store);
+    forBlocks(0, store.size(), (from, to) -> {
+      moveBlock(from, to);
+      findGravity(from, to);
+      kickBlock(from, to);
+    });
+    rememberedCount = store.size();
+  }
+
+  /**
+   * Runs body over [from, to) split across threads, a block of particles at a time.
+   */
+  private static void forBlocks(int from, int to, ParallelLoop.RangeBody body) {
+    ParallelLoop.forRange(to - from, MIN_INTEGRATION_CHUNK, (start, end) -> {
+      for (int block = from + start; block < from + end; block += KERNEL_BLOCK) {
+        body.run(block, Math.min(from + end, block + KERNEL_BLOCK));
+      }
+    });
+  }
+
+  /**
+   * Moves the awake particles in [from, to) for the pass's time, with the kernel as far as it
+   * goes, and then pushes them out of the obstacles.
+   */
+  private void moveBlock(int from, int to) {
+    int i = kernel == null ? from
+        : kernel.move(store, anyImpacts ? timeOfImpact : null, passTime, friction, from, to);
+    for (; i < to; i++) {
+      if (!store.isAsleep(i)) {
+        updatePosition(i, anyImpacts ? passTime * timeOfImpact[i] : passTime);
+      }
+    }
+    if (!obstacles.isEmpty()) {
+      CartesianVector normal = normalScratch.get();
+      for (i = from; i < to; i++) {
+        if (!store.isAsleep(i)) {
+          bounceOffObstacles(i, normal);
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the gravity on the awake particles in [from, to) where they are now, and remembers it.
+   */
+  private void findGravity(int from, int to) {
+    CartesianVector gravity = gravityScratch.get();
+    double[] x = store.getX();
+    double[] y = store.getY();
+    for (int i = from; i < to; i++) {
+      if (!store.isAsleep(i)) {
+        this.gravity.accelerationAt(x[i], y[i], gravity);
+        rememberedX[i] = gravity.getX();
+        rememberedY[i] = gravity.getY();
+      }
+    }
+  }
+
+  /**
+   * Adds the remembered gravity to the velocities of the awake particles in [from, to) for the
+   * pass's time, with the kernel as far as it goes.
+   */
+  private void kickBlock(int from, int to) {
+    int i = kernel == null ? from
+        : kernel.accelerate(store, rememberedX, rememberedY, passTime, maxVelocity, from, to);
+    CartesianVector gravity = gravityScratch.get();
+    for (; i < to; i++) {
+      if (!store.isAsleep(i)) {
+        accelerate(i, gravity.set(rememberedX[i], rememberedY[i]));
+      }
+    }
+  }
+
+  private void ensureRememberedCapacity(int size) {
+    if (rememberedX.length < size) {
+      int capacity = Math.max(size, rememberedX.length * 2);
+      rememberedX = Arrays.copyOf(rememberedX, capacity);
+      rememberedY = Arrays.copyOf(rememberedY, capacity);
+    }
+  }
+
+  /**
+   * Pushes the particle out of any obstacle it's in, and bounces it off like off of an edge.
+   */
+  private void bounceOffObstacles(int i, CartesianVector normal) {
+    double radius = store.getRadius()[i];
+    double distance = obstacles.sample(store.getX()[i], store.getY()[i], normal);
+    if (distance >= radius) {
+      return;
+    }
+    double depth = radius - distance;
+    store.getX()[i] += normal.getX() * depth;
+    store.getY()[i] += normal.getY() * depth;
+
+    //The normal is on the screen, where y is down, so flip the y velocity to match it
+    double[] vx = store.getVx();
+    double[] vy = store.getVy();
+    double into = vx[i] * normal.getX() - vy[i] * normal.getY();
+    if (into < 0) {
+      double bounce = into * (2 - friction);
+      vx[i] -= bounce * normal.getX();
+      vy[i] += bounce * normal.getY();
+    }
+  }
+
+  /**
+   * Updates the position of the particle, handling the edges as determined by the EdgeHandling
+   *
+   * @param time how many ticks worth of its velocity to move it by
+   */
+  private void updatePosition(int i, double time) {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] vx = store.getVx();
+    double[] vy = store.getVy();
+    switch (store.getEdgeHandling(i)) {
+      case BOUND:
+        double boundedX = x[i] + vx[i] * time;
+        double boundedY = y[i] - vy[i] * time;
+        x[i] = boundX(i, boundedX);
+        y[i] = boundY(i, boundedY);
+        //Stopped by an edge, so the speed into it is lost. Kept, it would push the particle into
+        //the edge every tick and into its neighbors in every collision, so a pile never settles
+        if (x[i] != boundedX && (x[i] < boundedX) == (vx[i] > 0)) {
+          vx[i] = 0;
+        }
+        if (y[i] != boundedY && (y[i] < boundedY) == (vy[i] < 0)) {
+          vy[i] = 0;
+        }
+        break;
+      case WRAP:
+        x[i] = wrapX(x[i] + vx[i] * time);
+        y[i] = wrapY(y[i] - vy[i] * time);
+        break;
+      case BOUNCE:
+        double radius = store.getRadius()[i];
+        double nextX = x[i] + vx[i] * time;
+        double nextY = y[i] - vy[i] * time;
+        if (nextX + radius > windowWidth || nextX - radius < 0) {
+          double edge = nextX - radius < 0 ? radius : windowWidth - radius;
+          //How much of the move happens before the particle reaches the edge
+          double hit = clampToUnit((edge - x[i]) / (nextX - x[i]));
+          //The rest of the move is reflected off of the edge and slowed by the friction
+          nextX = edge - (nextX - edge) * (1 - friction);
+          nextY = y[i] - vy[i] * time * (hit + (1 - hit) * (1 - friction));
+          vx[i] *= -(1 - friction);
+          vy[i] *= 1 - friction;
+        }
+        if (nextY + radius > windowHeight || nextY - radius < 0) {
+          double edge = nextY - radius < 0 ? radius : windowHeight - radius;
+          double hit = clampToUnit((edge - y[i]) / (nextY - y[i]));
+          nextY = edge - (nextY - edge) * (1 - friction);
+          nextX = x[i] + (nextX - x[i]) * (hit + (1 - hit) * (1 - friction));
+          vx[i] *= 1 - friction;
+          vy[i] *= -(1 - friction);
+        }
+        //A move longer than the window can still overshoot after the reflection
+        x[i] = boundX(i, nextX);
+        y[i] = boundY(i, nextY);
+        break;
+      case SUSTAIN:
+        x[i] += vx[i] * time;
+        y[i] -= vy[i] * time;
+        break;
+    }
+  }
+
+  /**
+   * <a href=https://williamecraver.wixsite.com/elastic-equations>Source for equations used</a>
+   */
+  private void handleCollision(int i) {
+    if (!store.collides(i) || store.isAsleep(i)) {
+      return;
+    }
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] vx = store.getVx();
+    double[] vy = store.getVy();
+    double radius = store.getRadius()[i];
+    boolean wraps = store.getEdgeHandling(i) == EdgeHandling.WRAP;
+
+    int candidateCount = collisionGrid.collectCandidates(x[i], y[i]);
+    for (int k = 0; k < candidateCount; k++) {
+      int j = collisionGrid.getCandidate(k);
+      if (j == i) {
+        continue;
+      }
+      double dX = x[i] - x[j];
+      double dY = y[i] - y[j];
+      if (wraps && store.getEdgeHandling(j) == EdgeHandling.WRAP) {
+        //Measure across the edges if that's closer
+        dX -= wrapWidth() * Math.rint(dX / wrapWidth());
+        dY -= wrapHeight() * Math.rint(dY / wrapHeight());
+      }
+      double distanceSquared = dX * dX + dY * dY;
+      if (distanceSquared > radius * radius * 4) {
+        continue;
+      }
+
+      //The unit vector from j's center to i's center
+      double distance = Math.sqrt(distanceSquared);
+      double normalX = distance > 0 ? dX / distance : 1;
+      double normalY = distance > 0 ? dY / distance : 0;
+      double overlap = radius - distance / 2;
+
+      if (trackingSleep) {
+        if (store.isAsleep(j)) {
+          //How fast i is heading into j, which isn't moving, remembering that vy points up
+          double closingSpeed = vy[i] * normalY - vx[i] * normalX;
+          //Further in than a pile's weight pushes particles, it's wedged between sleeping ones,
+          //and pushing it all the way out of each in turn would never end
+          if (closingSpeed <= wakeSpeed && overlap <= radius * WEDGED_OVERLAP) {
+            //Resting on a sleeping particle, so treat it like a wall instead of waking it. Only
+            //half of the way out, like an awake pair, or one squeezed between a sleeping particle
+            //and an awake one is bounced back and forth between them forever
+            x[i] += normalX * overlap;
+            y[i] += normalY * overlap;
+            rest(i, normalX, normalY);
+            continue;
+          }
+          wake(j);
+        }
+      }
+
+      //Push the particles apart along the line between their centers
+      x[i] += normalX * overlap;
+      y[i] += normalY * overlap;
+      x[j] -= normalX * overlap;
+      y[j] -= normalY * overlap;
+
+      //How fast they're heading into each other, remembering that vy points up
+      double closingSpeed = (vx[j] - vx[i]) * normalX - (vy[j] - vy[i]) * normalY;
+      if (trackingSleep && closingSpeed < wakeSpeed) {
+        //Resting on each other, only nudged together by gravity. Trading the nudges back and forth
+        //would keep a pile moving forever, so they rest against each other instead
+        rest(i, normalX, normalY);
+        rest(j, -normalX, -normalY);
+        //Moving them on again would only push a resting pile further into the floor
+        updatePosition(i, 0);
+        updatePosition(j, 0);
+        continue;
+      }
+
+      //The particles trade the parts of their velocities along the normal and keep the rest
+      double v1n = vx[i] * normalX + vy[i] * normalY;
+      double v2n = vx[j] * normalX + vy[j] * normalY;
+      vx[i] += (v2n - v1n) * normalX;
+      vy[i] += (v2n - v1n) * normalY;
+      vx[j] += (v1n - v2n) * normalX;
+      vy[j] += (v1n - v2n) * normalY;
+
+      updatePosition(i, separatingTime(i));
+      updatePosition(j, separatingTime(j));
+    }
+  }
+
+  /**
+   * @return how long to move a particle that was just knocked away. The move isn't swept, so it
+   *     stops once it has gone its radius instead of jumping into whatever is behind it
+   */
+  private double separatingTime(int i) {
+    double speed = Math.hypot(store.getVx()[i], store.getVy()[i]);
+    double radius = store.getRadius()[i];
+    return speed * timeStep > radius ? radius / speed : timeStep;
+  }
+
+  /**
+   * Stops a particle resting against another from moving into it, and slows it sliding along it,
+   * so that a pile comes to rest instead of its particles sliding off of each other forever.
+   *
+   * @param normalX the direction from the other particle to this one, on the screen
+   */
+  private void rest(int i, double normalX, double normalY) {
+    double[] vx = store.getVx();
+    double[] vy = store.getVy();
+    //The normal is on the screen, where y is down, so the velocity is flipped to match it
+    double away = vx[i] * normalX - vy[i] * normalY;
+    double slideX = vx[i] - away * normalX;
+    double slideY = -vy[i] - away * normalY;
+    away = Math.max(away, 0);
+    //A slide slower than a tick of gravity can push it sticks, like static friction
+    double slide = slideX * slideX + slideY * slideY < wakeSpeed * wakeSpeed ? 0
+        : 1 - RESTING_FRICTION;
+    vx[i] = away * normalX + slideX * slide;
+    vy[i] = -(away * normalY + slideY * slide);
+  }
+
+  /**
+   * Remembers where the particles start the tick.
+   */
+  private void startTrackingSleep() {
+    int size = store.size();
+    if (startX.length < size) {
+      int capacity = Math.max(size, startX.length * 2);
+      startX = new double[capacity];
+      startY = new double[capacity];
+      wakeQueue = new int[capacity];
+    }
+    System.arraycopy(store.getX(), 0, startX, 0, size);
+    System.arraycopy(store.getY(), 0, startY, 0, size);
+  }
+
+  /**
+   * Wakes a sleeping particle that was hit, and later everything asleep that it's resting on.
+   */
+  private void wake(int i) {
+    store.setAsleep(i, false);
+    wakeQueue[wakeQueueSize++] = i;
+  }
+
+  /**
+   * Spreads the wake ups through every sleeping particle resting on a woken one, so nothing is left
+   * asleep in midair when what it was resting on moves. Particles beside or under it are still held
+   * up by the rest of the pile, so they sleep on instead of the whole pile waking at every bump.
+   */
+  private void wakeTouchingParticles() {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] radius = store.getRadius();
+    while (wakeQueueSize > 0) {
+      int i = wakeQueue[--wakeQueueSize];
+      boolean wraps = store.getEdgeHandling(i) == EdgeHandling.WRAP;
+      int candidateCount = collisionGrid.collectCandidates(x[i], y[i]);
+      for (int k = 0; k < candidateCount; k++) {
+        int j = collisionGrid.getCandidate(k);
+        if (!store.isAsleep(j)) {
+          continue;
+        }
+        double dX = x[i] - x[j];
+        double dY = y[i] - y[j];
+        if (wraps && store.getEdgeHandling(j) == EdgeHandling.WRAP) {
+          dX -= wrapWidth() * Math.rint(dX / wrapWidth());
+          dY -= wrapHeight() * Math.rint(dY / wrapHeight());
+        }
+        double reach = (radius[i] + radius[j]) * CONTACT_SLACK;
+        if (dX * dX + dY * dY > reach * reach) {
+          continue;
+        }
+        //Resting on i if its gravity pulls it toward i, remembering that the gravity's y points up
+        if (j >= rememberedCount || rememberedX[j] * dX - rememberedY[j] * dY > 0) {
+          wake(j);
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts how long each particle has been still, and puts the ones that have been still long
+   * enough to sleep.
+   */
+  private void putStillParticlesToSleep() {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    int[] stillTicks = store.getStillTicks();
+    double sleepSpeed = world.getSleepSpeed();
+    //Still for as long whatever the step, or a long step would need far longer to fall asleep
+    int sleepTicks = (int) Math.ceil(world.getSleepTicks() / timeStep);
+    for (int i = 0; i < store.size(); i++) {
+      if (store.isAsleep(i)) {
+        continue;
+      }
+      double dX = x[i] - startX[i];
+      double dY = y[i] - startY[i];
+      double stillDistance = sleepSpeed * timeStep;
+      if (dX * dX + dY * dY > stillDistance * stillDistance) {
+        stillTicks[i] = 0;
+      } else if (++stillTicks[i] >= sleepTicks) {
+        store.setAsleep(i, true);
+        store.getVx()[i] = 0;
+        store.getVy()[i] = 0;
+      }
+    }
+  }
+
+  /**
+   * Finds how far through the step each particle can move before it runs into another one. The
+   * collision pass only sees particles that already touch, so without this a particle moving
+   * further than its radius in a step could jump over another.
+   *
+   * @return whether any particle has to stop short
+   */
+  private boolean findTimesOfImpact() {
+    int size = store.size();
+    if (moveX.length < size) {
+      int capacity = Math.max(size, moveX.length * 2);
+      moveX = new double[capacity];
+      moveY = new double[capacity];
+      timeOfImpact = new double[capacity];
+    }
+    boolean anyFast = false;
+    for (int i = 0; i < size; i++) {
+      if (store.collides(i)) {
+        predictMove(i);
+        anyFast |= isFast(i);
+      }
+    }
+    if (!anyFast) {
+      return false;
+    }
+
+    Arrays.fill(timeOfImpact, 0, size, 1);
+    sweepGrid.rebuild(store, moveX, moveY, windowWidth, windowHeight, wrapWidth(),
+        wrapHeight());
+    boolean anyStopped = false;
+    for (int i = 0; i < size; i++) {
+      if (store.collides(i) && isFast(i)) {
+        anyStopped |= sweep(i);
+      }
+    }
+    return anyStopped;
+  }
+
+  /**
+   * Works out how far the particle will move this step. An edge that bounds it stops it, and so
+   * does an edge it bounces off of, since it only comes back as far as it went past. Sleeping
+   * particles don't move.
+   */
+  private void predictMove(int i) {
+    if (store.isAsleep(i)) {
+      moveX[i] = 0;
+      moveY[i] = 0;
+      return;
+    }
+    double x = store.getX()[i];
+    double y = store.getY()[i];
+    //vy points up, so it's subtracted
+    double nextX = x + store.getVx()[i] * timeStep;
+    double nextY = y - store.getVy()[i] * timeStep;
+    EdgeHandling edgeHandling = store.getEdgeHandling(i);
+    if (edgeHandling == EdgeHandling.BOUND || edgeHandling == EdgeHandling.BOUNCE) {
+      nextX = boundX(i, nextX);
+      nextY = boundY(i, nextY);
+    }
+    moveX[i] = nextX - x;
+    moveY[i] = nextY - y;
+  }
+
+  /**
+   * Only call this once the particle's move is predicted.
+   *
+   * @return whether the particle is awake and moves further than its diameter this step, far
+   *     enough to jump past another particle without the collision pass noticing. Particles held
+   *     against an edge barely move, however fast they're heading into it
+   */
+  private boolean isFast(int i) {
+    double radius = store.getRadius()[i];
+    return moveX[i] * moveX[i] + moveY[i] * moveY[i] > radius * radius * 4;
+  }
+
+  /**
+   * Stops a fast particle, and anything it would hit, at the moment they first touch.
+   *
+   * @return whether anything was hit
+   */
+  private boolean sweep(int i) {
+    boolean hit = false;
+    int candidateCount = sweepGrid.collectCandidates(store, moveX, moveY, i);
+    for (int k = 0; k < candidateCount; k++) {
+      int j = sweepGrid.getCandidate(k);
+      double time = timeOfImpact(i, j);
+      if (time < 1) {
+        timeOfImpact[i] = Math.min(timeOfImpact[i], time);
+        timeOfImpact[j] = Math.min(timeOfImpact[j], time);
+        hit = true;
+      }
+    }
+    return hit;
+  }
+
+  /**
+   * Solves for when two circles moving in straight lines first touch.
+   *
+   * @return how far through the step they touch, or 1 if they don't
+   */
+  private double timeOfImpact(int i, int j) {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] radius = store.getRadius();
+    //j's point of view: where i starts and how far it moves
+    double startX = x[i] - x[j];
+    double startY = y[i] - y[j];
+    if (store.getEdgeHandling(i) == EdgeHandling.WRAP
+        && store.getEdgeHandling(j) == EdgeHandling.WRAP) {
+      startX -= wrapWidth() * Math.rint(startX / wrapWidth());
+      startY -= wrapHeight() * Math.rint(startY / wrapHeight());
+    }
+    double moveX = this.moveX[i] - this.moveX[j];
+    double moveY = this.moveY[i] - this.moveY[j];
+    double reach = (radius[i] + radius[j]) * IMPACT_DEPTH;
+
+    //|start + time * move| = reach is a quadratic in time
+    double c = startX * startX + startY * startY - reach * reach;
+    double halfB = startX * moveX + startY * moveY;
+    if (c <= 0 || halfB >= 0) {
+      //Already touching, which the collision pass handles, or moving apart
+      return 1;
+    }
+    double a = moveX * moveX + moveY * moveY;
+    double discriminant = halfB * halfB - a * c;
+    if (discriminant < 0) {
+      return 1;
+    }
+    return Math.min((-halfB - Math.sqrt(discriminant)) / a, 1);
+  }
+
+  private static double clampToUnit(double value) {
+    return Math.max(0, Math.min(value, 1));
+  }
+
+  /**
+   * Adds the acceleration on to the velocity for the pass's time, capping the speed
+   *
+   * @param acceleration the gravity on the particle, which is used up
+   */
+  private void accelerate(int i, CartesianVector acceleration) {
+    double[] vx = store.getVx();
+    double[] vy = store.getVy();
+    acceleration.scale(passTime).add(vx[i], vy[i]).clampLength(maxVelocity);
+    vx[i] = acceleration.getX();
+    vy[i] = acceleration.getY();
+  }
+
+  /**
+   * @return whether collisions need to be found across the edges of the window
+   */
+  private boolean anyParticleWraps() {
+    for (int i = 0; i < store.size(); i++) {
+      if (store.getEdgeHandling(i) == EdgeHandling.WRAP) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Keep the x value in the window
+   *
+   * @return the bounded value
+   */
+  private double boundX(int i, double x) {
+    double radius = store.getRadius()[i];
+    return Math.max(radius, Math.min(x, windowWidth - radius));
+  }
+
+  /**
+   * The same as boundX, but for y
+   *
+   * @return the bounded value
+   */
+  private double boundY(int i, double y) {
+    double radius = store.getRadius()[i];
+    return Math.max(radius, Math.min(y, windowHeight - radius));
+  }
+
+  /**
+   * Wraps a ball like Pac-Man going over the sides of the screens
+   *
+   * @return the wrapped x value
+   */
+  private double wrapX(double x) {
+    if (x > windowWidth + WRAP_MARGIN) {
+      return -WRAP_MARGIN;
+    } else if (x < -WRAP_MARGIN) {
+      return windowWidth + WRAP_MARGIN;
+    } else {
+      return x;
+    }
+  }
+
+  /**
+   * Like wrapX, but for up and down
+   *
+   * @return the wrapped y value
+   */
+  private double wrapY(double y) {
+    if (y > windowHeight + WRAP_MARGIN) {
+      return -WRAP_MARGIN;
+    } else if (y < -WRAP_MARGIN) {
+      return windowHeight + WRAP_MARGIN;
+    } else {
+      return y;
+    }
+  }
+
+  /**
+   * @return the distance between the two points that wrapX treats as the same
+   */
+  private double wrapWidth() {
+    return windowWidth + 2 * WRAP_MARGIN;
+  }
+
+  /**
+   * @return the distance between the two points that wrapY treats as the same
+   */
+  private double wrapHeight() {
+    return windowHeight + 2 * WRAP_MARGIN;
+  }
+}
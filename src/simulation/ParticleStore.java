@@ -0,0 +1,255 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * Holds the state of every particle in parallel primitive arrays, so the physics can run over
+ * them without touching the scene graph. Particles are identified by their index.
+ *
+ * <p>The arrays are replaced when they grow, so don't hold on to them across an add.
+ */
+public class ParticleStore {
+
+  /**
+   * Set in a particle's flags if it should collide with other particles.
+   */
+  public static final int COLLIDES = 1;
+  /**
+   * Set in a particle's flags while it's asleep. Sleeping particles aren't stepped until something
+   * wakes them.
+   */
+  public static final int ASLEEP = 2;
+
+  //The EdgeHandling ordinal is packed into the flags above the boolean bits
+  static final int EDGE_SHIFT = 8;
+  private static final int EDGE_MASK = 0xF << EDGE_SHIFT;
+  private static final EdgeHandling[] EDGE_HANDLINGS = EdgeHandling.values();
+
+  private double[] x;
+  private double[] y;
+  private double[] vx;
+  private double[] vy;
+  private double[] radius;
+  private int[] flags;
+  //How many ticks in a row each particle has barely moved
+  private int[] stillTicks;
+  private int size;
+  private int sleepingCount;
+  private long generation;
+
+  public ParticleStore() {
+    this(64);
+  }
+
+  public ParticleStore(int initialCapacity) {
+    x = new double[initialCapacity];
+    y = new double[initialCapacity];
+    vx = new double[initialCapacity];
+    vy = new double[initialCapacity];
+    radius = new double[initialCapacity];
+    flags = new int[initialCapacity];
+    stillTicks = new int[initialCapacity];
+  }
+
+  /**
+   * Adds a particle.
+   *
+   * @param x X value that the particle will start at
+   * @param y Y value that the particle will start at
+   * @param vx the x component of the starting velocity
+   * @param vy the y component of the starting velocity, positive is up
+   * @param radius size of the particle
+   * @param edgeHandling how the particle will behave when hitting an edge
+   * @param doCollisions whether or not to have it collide with other particles
+   * @return the index of the new particle
+   */
+  public int add(double x, double y, double vx, double vy, double radius,
+      EdgeHandling edgeHandling, boolean doCollisions) {
+    ensureCapacity(size + 1);
+    this.x[size] = x;
+    this.y[size] = y;
+    this.vx[size] = vx;
+    this.vy[size] = vy;
+    this.radius[size] = radius;
+    this.flags[size] = packFlags(edgeHandling, doCollisions);
+    this.stillTicks[size] = 0;
+    return size++;
+  }
+
+  /**
+   * Grows the arrays so they can hold at least capacity particles.
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity <= x.length) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, x.length + (x.length >> 1) + 1);
+    x = Arrays.copyOf(x, newCapacity);
+    y = Arrays.copyOf(y, newCapacity);
+    vx = Arrays.copyOf(vx, newCapacity);
+    vy = Arrays.copyOf(vy, newCapacity);
+    radius = Arrays.copyOf(radius, newCapacity);
+    flags = Arrays.copyOf(flags, newCapacity);
+    stillTicks = Arrays.copyOf(stillTicks, newCapacity);
+  }
+
+  /**
+   * Replaces every particle with the first count particles of the arrays, copying them in bulk.
+   * Every particle starts awake.
+   *
+   * @param flags packed like getFlags
+   */
+  public void setAll(int count, double[] x, double[] y, double[] vx, double[] vy,
+      double[] radius, int[] flags) {
+    clear();
+    ensureCapacity(count);
+    System.arraycopy(x, 0, this.x, 0, count);
+    System.arraycopy(y, 0, this.y, 0, count);
+    System.arraycopy(vx, 0, this.vx, 0, count);
+    System.arraycopy(vy, 0, this.vy, 0, count);
+    System.arraycopy(radius, 0, this.radius, 0, count);
+    for (int i = 0; i < count; i++) {
+      this.flags[i] = flags[i] & ~ASLEEP;
+    }
+    Arrays.fill(stillTicks, 0, count, 0);
+    size = count;
+  }
+
+  /**
+   * Removes every particle. The arrays are kept for reuse.
+   */
+  public void clear() {
+    size = 0;
+    sleepingCount = 0;
+    generation++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return a number that changes every time the particles are cleared
+   */
+  public long getGeneration() {
+    return generation;
+  }
+
+  public double[] getX() {
+    return x;
+  }
+
+  public double[] getY() {
+    return y;
+  }
+
+  public double[] getVx() {
+    return vx;
+  }
+
+  /**
+   * @return the y components of the velocities. Positive is up, unlike the positions
+   */
+  public double[] getVy() {
+    return vy;
+  }
+
+  public double[] getRadius() {
+    return radius;
+  }
+
+  public int[] getFlags() {
+    return flags;
+  }
+
+  public int[] getStillTicks() {
+    return stillTicks;
+  }
+
+  public boolean collides(int index) {
+    return (flags[index] & COLLIDES) != 0;
+  }
+
+  public boolean isAsleep(int index) {
+    return (flags[index] & ASLEEP) != 0;
+  }
+
+  /**
+   * Puts a particle to sleep or wakes it up. Waking a particle starts its count of still ticks
+   * over.
+   */
+  public void setAsleep(int index, boolean asleep) {
+    if (asleep == isAsleep(index)) {
+      return;
+    }
+    if (asleep) {
+      flags[index] |= ASLEEP;
+      sleepingCount++;
+    } else {
+      flags[index] &= ~ASLEEP;
+      stillTicks[index] = 0;
+      sleepingCount--;
+    }
+  }
+
+  /**
+   * @return how many particles are asleep
+   */
+  public int getSleepingCount() {
+    return sleepingCount;
+  }
+
+  /**
+   * Wakes every particle.
+   */
+  public void wakeAll() {
+    for (int i = 0; i < size; i++) {
+      flags[i] &= ~ASLEEP;
+    }
+    Arrays.fill(stillTicks, 0, size, 0);
+    sleepingCount = 0;
+  }
+
+  public EdgeHandling getEdgeHandling(int index) {
+    return EDGE_HANDLINGS[(flags[index] & EDGE_MASK) >>> EDGE_SHIFT];
+  }
+
+  /**
+   * @return the speed of a particle
+   */
+  public double speed(int index) {
+    return Math.sqrt(vx[index] * vx[index] + vy[index] * vy[index]);
+  }
+
+  /**
+   * Sets the EdgeHandling of every particle, and wakes them all.
+   */
+  public void setEdgeHandling(EdgeHandling edgeHandling) {
+    wakeAll();
+    for (int i = 0; i < size; i++) {
+      flags[i] = (flags[i] & ~EDGE_MASK) | (edgeHandling.ordinal() << EDGE_SHIFT);
+    }
+  }
+
+  /**
+   * Sets whether or not every particle collides with other particles, and wakes them all.
+   */
+  public void setDoCollisions(boolean doCollisions) {
+    wakeAll();
+    for (int i = 0; i < size; i++) {
+      flags[i] = doCollisions ? flags[i] | COLLIDES : flags[i] & ~COLLIDES;
+    }
+  }
+
+  /**
+   * Sets the radius of every particle, and wakes them all.
+   */
+  public void setRadius(double radius) {
+    wakeAll();
+    Arrays.fill(this.radius, 0, size, radius);
+  }
+
+  private static int packFlags(EdgeHandling edgeHandling, boolean doCollisions) {
+    return (edgeHandling.ordinal() << EDGE_SHIFT) | (doCollisions ? COLLIDES : 0);
+  }
+}
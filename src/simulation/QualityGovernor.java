@@ -0,0 +1,144 @@
+package simulation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a Simulation running in real time by turning its quality down while ticks or frames take
+ * longer than they have, and back up once they're cheap again. Quality is given up in the order of
+ * the Quality values, each one keeping what the ones before it gave up.
+ *
+ * <p>Ticks are measured over windows of half a second of real time, so one slow tick doesn't
+ * change anything, and the quality is judged again a window after every change.
+ */
+public class QualityGovernor {
+
+  public enum Quality {
+    //Everything, every tick
+    FULL,
+    //Pairs of particles are only checked for collisions every other tick
+    ALTERNATE_COLLISIONS,
+    //Each tick runs the integrator in half as many substeps, down to 1. Skipped both ways while
+    //the world only has 1 substep, since there's nothing to halve
+    FEWER_SUBSTEPS,
+    //The colors of the particles are only updated every few frames
+    SLOW_COLORS
+  }
+
+  //Ticks and frames leave some of their time for everything else
+  private static final double BUDGET = 0.8;
+  //Each step roughly halves the cost, so only step back up if double the cost would still fit
+  private static final double RESTORE_LOAD = 0.35;
+  private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+  private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+  //How much each frame counts toward the average frame cost
+  private static final double FRAME_SMOOTHING = 0.05;
+
+  private volatile Quality quality = Quality.FULL;
+  private volatile boolean enabled = true;
+  //Written by the JavaFX thread, read by the simulation thread
+  private volatile double frameLoad;
+  private double averageFrameCost;
+
+  //Only touched by the simulation thread
+  private long windowStart = System.nanoTime();
+  private long windowCost;
+  private long windowTime;
+
+  public Quality getQuality() {
+    return quality;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turning the governor off puts the quality back to full before the next tick.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Counts how long drawing a frame took. Only call this from one thread.
+   */
+  public void recordFrame(long costNanos) {
+    averageFrameCost += (costNanos - averageFrameCost) * FRAME_SMOOTHING;
+    frameLoad = averageFrameCost / (FRAME_NANOS * BUDGET);
+  }
+
+  /**
+   * Counts how long a tick took, and changes the quality if the window it ends is over or well
+   * under budget. Only call this from the simulation thread.
+   *
+   * @param costNanos how long the tick took to run
+   * @param tickNanos how much real time the tick had
+   * @param substeps how many substeps the world is set to
+   * @return whether the quality changed
+   */
+  boolean recordTick(long costNanos, long tickNanos, int substeps) {
+    if (!enabled) {
+      return setQuality(Quality.FULL);
+    }
+    windowCost += costNanos;
+    windowTime += tickNanos;
+    long now = System.nanoTime();
+    if (now - windowStart < WINDOW_NANOS) {
+      return false;
+    }
+
+    double load = Math.max(windowCost / (windowTime * BUDGET), frameLoad);
+    windowStart = now;
+    windowCost = 0;
+    windowTime = 0;
+    if (load > 1) {
+      return setQuality(nextQuality(1, substeps));
+    } else if (load < RESTORE_LOAD) {
+      return setQuality(nextQuality(-1, substeps));
+    }
+    return false;
+  }
+
+  /**
+   * @param direction 1 to turn the quality down, -1 to turn it up
+   * @return the next quality that direction that saves something, or the current one if there
+   *     isn't one
+   */
+  private Quality nextQuality(int direction, int substeps) {
+    Quality[] qualities = Quality.values();
+    int next = quality.ordinal() + direction;
+    if (next == Quality.FEWER_SUBSTEPS.ordinal() && substeps == 1) {
+      next += direction;
+    }
+    return next >= 0 && next < qualities.length ? qualities[next] : quality;
+  }
+
+  /**
+   * Puts the quality back to full, and judges it afresh from the next tick. Only call this from
+   * the simulation thread.
+   *
+   * @return whether the quality changed
+   */
+  boolean reset() {
+    boolean changed = quality != Quality.FULL;
+    quality = Quality.FULL;
+    startWindow();
+    return changed;
+  }
+
+  private boolean setQuality(Quality quality) {
+    if (this.quality == quality) {
+      return false;
+    }
+    this.quality = quality;
+    //Don't judge the new quality by ticks run at the old one
+    startWindow();
+    return true;
+  }
+
+  private void startWindow() {
+    windowStart = System.nanoTime();
+    windowCost = 0;
+    windowTime = 0;
+  }
+}
@@ -0,0 +1,210 @@
+package simulation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Steps a World, either as fast as possible with run, or in real time on its own thread with
+ * start, which setWarp can speed up. Changes to the world are queued with edit and made between
+ * ticks, so they never happen in the middle of one.
+ *
+ * <p>Ticks, edits and reads all lock the World's particles, so Simulations whose Worlds share
+ * particles take turns.
+ */
+public class Simulation {
+
+  private final World world;
+  private final Queue<Consumer<World>> pendingEdits = new ConcurrentLinkedQueue<>();
+  private final QualityGovernor governor = new QualityGovernor();
+  private volatile SimulationLoop loop;
+  //Guards the warp, which the simulation thread ends by itself, so stop can wait for that thread
+  //while holding the Simulation's own lock
+  private final Object warpLock = new Object();
+  private volatile double warp = 1;
+  //The world time the warp ends at
+  private volatile double warpUntil;
+  //Only touched while holding the particles' lock
+  private TrajectoryRecorder recorder;
+
+  public Simulation(World world) {
+    this.world = world;
+  }
+
+  public World getWorld() {
+    return world;
+  }
+
+  /**
+   * @return what turns the quality down when started ticks can't keep up with real time
+   */
+  public QualityGovernor getGovernor() {
+    return governor;
+  }
+
+  /**
+   * Runs started ticks warp times as fast as real time until the world's time reaches until, then
+   * goes back to real time. Warped ticks are meant to fall behind, so the governor leaves them at
+   * full quality, and the state is still published about once a frame.
+   *
+   * @param warp how many times as fast as real time to run. 1 goes back to real time, and
+   *     Double.POSITIVE_INFINITY runs ticks as fast as they can
+   * @param until the world time to stop at, in the same units as World.getTime
+   */
+  public void setWarp(double warp, double until) {
+    synchronized (warpLock) {
+      this.warp = warp;
+      warpUntil = until;
+      SimulationLoop loop = this.loop;
+      if (loop != null) {
+        loop.setWarp(warp);
+      }
+    }
+  }
+
+  /**
+   * @return how many times as fast as real time started ticks run. It goes back to 1 by itself
+   *     once the warp's time is up
+   */
+  public double getWarp() {
+    return warp;
+  }
+
+  /**
+   * Queues a change to the world. It is made before the next tick.
+   */
+  public void edit(Consumer<World> edit) {
+    pendingEdits.add(edit);
+  }
+
+  /**
+   * Records every tick from now on, or stops recording if recorder is null. Waits for the current
+   * tick to finish, so once this returns the old recorder isn't used anymore and can be closed.
+   */
+  public void setRecorder(TrajectoryRecorder recorder) {
+    synchronized (world.getParticles()) {
+      this.recorder = recorder;
+    }
+  }
+
+  /**
+   * Makes the queued edits, then moves the world forward one tick.
+   */
+  public void tick() {
+    synchronized (world.getParticles()) {
+      applyEdits();
+      world.step();
+      if (recorder != null) {
+        recorder.record(world);
+      }
+    }
+  }
+
+  /**
+   * Runs ticks on the calling thread as fast as it can.
+   */
+  public void run(long ticks) {
+    for (long i = 0; i < ticks; i++) {
+      tick();
+    }
+  }
+
+  /**
+   * Looks at the world between ticks. While it isn't started, the queued edits are made first.
+   */
+  public void read(Consumer<World> reader) {
+    synchronized (world.getParticles()) {
+      if (loop == null) {
+        //Nothing is ticking to make the queued edits, so make them now for the reader to see
+        applyEdits();
+      }
+      reader.accept(world);
+    }
+  }
+
+  /**
+   * Starts ticking in real time on a thread of its own. Does nothing if it's already started.
+   *
+   * @param name the name of the thread
+   * @param tickNanos how much real time one tick takes
+   * @param publish called on the simulation thread after it catches up, given how much simulated
+   *     time passed since the last call. Use read in it to look at the world
+   */
+  public synchronized void start(String name, long tickNanos, LongConsumer publish) {
+    if (loop == null) {
+      synchronized (warpLock) {
+        loop = new SimulationLoop(name, tickNanos, this::governedTick, publish);
+        loop.setWarp(warp);
+      }
+      applyQuality();
+      loop.start();
+    }
+  }
+
+  /**
+   * Stops the thread started by start, and waits for its last tick to finish, so the world is left
+   * alone once this returns.
+   */
+  public synchronized void stop() {
+    if (loop != null) {
+      loop.stop();
+      loop = null;
+    }
+  }
+
+  /**
+   * Ticks, and lets the governor change the quality if the tick took too long. Ends the warp once
+   * its time is up.
+   */
+  private void governedTick() {
+    long start = System.nanoTime();
+    tick();
+    SimulationLoop loop = this.loop;
+    if (loop == null) {
+      return;
+    }
+    if (loop.getWarp() != 1) {
+      if (governor.reset()) {
+        applyQuality();
+      }
+      if (world.getTime() >= warpUntil) {
+        endWarp(loop);
+      }
+    } else if (governor.recordTick(System.nanoTime() - start, loop.getTickNanos(),
+        world.getSubsteps())) {
+      applyQuality();
+    }
+  }
+
+  /**
+   * Goes back to real time, unless the warp was changed to one that isn't up yet.
+   */
+  private void endWarp(SimulationLoop loop) {
+    synchronized (warpLock) {
+      if (world.getTime() >= warpUntil) {
+        warp = 1;
+        loop.setWarp(1);
+      }
+    }
+  }
+
+  /**
+   * Sets the world up for the governor's quality. Only settings that snapshots leave out are
+   * changed, so a world saved while the quality is down loads at full quality. The colors are up
+   * to whatever draws the world.
+   */
+  private void applyQuality() {
+    QualityGovernor.Quality quality = governor.getQuality();
+    world.setCollisionInterval(
+        quality.compareTo(QualityGovernor.Quality.ALTERNATE_COLLISIONS) >= 0 ? 2 : 1);
+    world.setHalvingSubsteps(
+        quality.compareTo(QualityGovernor.Quality.FEWER_SUBSTEPS) >= 0);
+  }
+
+  private void applyEdits() {
+    for (Consumer<World> edit = pendingEdits.poll(); edit != null; edit = pendingEdits.poll()) {
+      edit.accept(world);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package simulation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * Runs a simulation on its own thread with a fixed timestep. Time that passes builds up in an
+ * accumulator and is spent a whole tick at a time, so the simulation runs at the same speed no
+ * matter how fast the window is drawn.
+ *
+ * <p>Warped, every nanosecond of real time stands for more than one of simulated time, and the
+ * ticks that can't keep up are dropped like they are in real time. The state is then only
+ * published about once a frame, so however many ticks are run it's shown at the display's rate.
+ */
+public class SimulationLoop implements Runnable {
+
+  //If the simulation can't keep up, give up on the lost time instead of falling further behind
+  private static final int MAX_TICKS_PER_WAKEUP = 5;
+  //Warped, ticks run for about a frame at a time, and the state is published once between
+  private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+  private final String name;
+  private volatile long tickNanos;
+  private volatile double warp = 1;
+  private final Runnable tick;
+  private final LongConsumer publish;
+  private volatile boolean running;
+  private Thread thread;
+
+  /**
+   * @param name the name of the thread
+   * @param tickNanos how much time one tick simulates
+   * @param tick steps the simulation forward one tick
+   * @param publish makes the state visible, given how much simulated time passed since the last
+   * time it was called
+   */
+  public SimulationLoop(String name, long tickNanos, Runnable tick, LongConsumer publish) {
+    this.name = name;
+    this.tickNanos = tickNanos;
+    this.tick = tick;
+    this.publish = publish;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    thread = new Thread(this, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the thread, and waits for the tick it's in to finish unless it's the one calling this.
+   */
+  public synchronized void stop() {
+    running = false;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      if (thread != Thread.currentThread()) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      thread = null;
+    }
+  }
+
+  @Override
+  public void run() {
+    long previous = System.nanoTime();
+    long accumulator = 0;
+    long lastPublish = previous;
+    int unpublishedTicks = 0;
+    long unpublishedNanos = 0;
+    while (running) {
+      long tickNanos = this.tickNanos;
+      double warp = this.warp;
+      boolean warped = warp != 1;
+      long now = System.nanoTime();
+      //An unlimited warp owes more time than can ever be run, so it ticks whenever it's awake
+      accumulator = Double.isInfinite(warp) ? Long.MAX_VALUE
+          : accumulator + (long) ((now - previous) * warp);
+      previous = now;
+
+      int ticks = 0;
+      while (running && accumulator >= tickNanos && this.warp == warp
+          && (warped ? System.nanoTime() - now < FRAME_NANOS : ticks < MAX_TICKS_PER_WAKEUP)) {
+        tick.run();
+        accumulator -= tickNanos;
+        ticks++;
+      }
+      if (accumulator >= tickNanos || this.warp != warp) {
+        accumulator %= tickNanos;
+      }
+
+      //The ticks are shown over the real time they stand for, which is none for an unlimited warp
+      unpublishedTicks += ticks;
+      unpublishedNanos += (long) (ticks * tickNanos / warp);
+      if (unpublishedTicks > 0 && (!warped || this.warp != warp
+          || System.nanoTime() - lastPublish >= FRAME_NANOS)) {
+        publish.accept(unpublishedNanos);
+        lastPublish = System.nanoTime();
+        unpublishedTicks = 0;
+        unpublishedNanos = 0;
+      }
+
+      LockSupport.parkNanos((long) ((tickNanos - accumulator) / warp));
+    }
+  }
+
+  public long getTickNanos() {
+    return tickNanos;
+  }
+
+  /**
+   * Makes each tick take a different amount of real time, from the next one on.
+   */
+  public void setTickNanos(long tickNanos) {
+    this.tickNanos = tickNanos;
+  }
+
+  public double getWarp() {
+    return warp;
+  }
+
+  /**
+   * Makes ticks run warp times as fast as in real time, from the next one on.
+   *
+   * @param warp how many nanoseconds of simulated time each one of real time stands for. 1 is
+   *     real time, and Double.POSITIVE_INFINITY runs ticks as fast as they can
+   */
+  public void setWarp(double warp) {
+    this.warp = warp;
+  }
+}
@@ -0,0 +1,160 @@
+package simulation;
+
+/**
+ * Gravity from fixed sources, baked into a GravityField, and optionally from the particles
+ * themselves through a BarnesHutTree or a ParticleMesh.
+ */
+public class SourceGravity implements GravityModel {
+
+  private final double gravityConstant;
+  private final GravityField field;
+  private final BarnesHutTree particleTree = new BarnesHutTree();
+  private final ParticleMesh isolatedMesh;
+  private final ParticleMesh periodicMesh;
+  //Set from any thread, read by the simulation threads
+  private volatile boolean particleGravity;
+  private volatile ParticleGravitySolver solver = ParticleGravitySolver.BARNES_HUT;
+  private volatile double openingAngle = 0.5;
+  private volatile double particleMass = 1;
+  private volatile double softening = 1;
+  //What prepare got ready for this tick, or null for no particle gravity. Only the simulation
+  //threads touch it, so changing the settings partway through a tick doesn't change it
+  private ParticleGravitySolver prepared;
+
+  /**
+   * @param width the width of the world
+   * @param height the height of the world
+   * @param gravityConstant G
+   */
+  public SourceGravity(double width, double height, double gravityConstant) {
+    this.gravityConstant = gravityConstant;
+    this.field = new GravityField(width, height, gravityConstant);
+    this.isolatedMesh = new ParticleMesh(width, height, false);
+    this.periodicMesh = new ParticleMesh(width, height, true);
+  }
+
+  /**
+   * @return the sources. Only edit them between ticks, through Simulation.edit
+   */
+  public GravityField getField() {
+    return field;
+  }
+
+  public double getGravityConstant() {
+    return gravityConstant;
+  }
+
+  /**
+   * Sets whether the particles pull on each other as well as being pulled by the sources.
+   */
+  public void setParticleGravity(boolean particleGravity) {
+    this.particleGravity = particleGravity;
+  }
+
+  public boolean hasParticleGravity() {
+    return particleGravity;
+  }
+
+  /**
+   * Sets how the particles' pull on each other is found.
+   */
+  public void setSolver(ParticleGravitySolver solver) {
+    this.solver = solver;
+  }
+
+  public ParticleGravitySolver getSolver() {
+    return solver;
+  }
+
+  /**
+   * @return the mesh the solver uses, or null if it doesn't use one
+   */
+  public ParticleMesh getMesh() {
+    return getMesh(solver);
+  }
+
+  /**
+   * Sets theta for the Barnes-Hut tree. Lower is more accurate, higher is faster.
+   */
+  public void setOpeningAngle(double openingAngle) {
+    this.openingAngle = openingAngle;
+  }
+
+  public double getOpeningAngle() {
+    return openingAngle;
+  }
+
+  public void setParticleMass(double particleMass) {
+    this.particleMass = particleMass;
+  }
+
+  public double getParticleMass() {
+    return particleMass;
+  }
+
+  /**
+   * Sets how close particles can get before their pull on each other stops growing. The particle
+   * radius works well, so particles that overlap don't fling each other away.
+   */
+  public void setSoftening(double softening) {
+    this.softening = softening;
+  }
+
+  public double getSoftening() {
+    return softening;
+  }
+
+  /**
+   * @return the average number of nodes and particles each particle's gravity looked at last tick
+   */
+  public double getAverageInteractions() {
+    return particleTree.getAverageInteractions();
+  }
+
+  /**
+   * Builds the tree or the mesh the particles' gravity on each other is found from.
+   */
+  @Override
+  public void prepare(ParticleStore particles) {
+    prepared = particleGravity ? solver : null;
+    if (prepared == ParticleGravitySolver.BARNES_HUT) {
+      particleTree.build(particles, particleMass);
+    } else if (prepared != null) {
+      getMesh(prepared).prepare(particles, gravityConstant, particleMass, softening);
+    }
+  }
+
+  /**
+   * g = (GM / r^2)<b>r</b>, summed over every source. The sum is baked into the field, so this is
+   * one lookup however many sources there are.
+   */
+  @Override
+  public void accelerationAt(double x, double y, CartesianVector acceleration) {
+    field.sample(x, y, acceleration);
+    if (prepared == ParticleGravitySolver.BARNES_HUT) {
+      particleTree.addAcceleration(x, y, gravityConstant, openingAngle, softening, acceleration);
+    } else if (prepared != null) {
+      getMesh(prepared).addAcceleration(x, y, acceleration);
+    }
+  }
+
+  /**
+   * Only the sources' gravity, since the particles' pull is found from what only the simulation
+   * threads can read.
+   */
+  @Override
+  public void previewAccelerationAt(double x, double y, CartesianVector acceleration) {
+    field.sumPublishedSources(x, y, acceleration);
+  }
+
+  private ParticleMesh getMesh(ParticleGravitySolver solver) {
+    switch (solver) {
+      case ISOLATED_MESH:
+        return isolatedMesh;
+      case PERIODIC_MESH:
+        return periodicMesh;
+      default:
+        return null;
+    }
+  }
+}
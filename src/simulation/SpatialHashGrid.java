@@ -0,0 +1,157 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid used as a broad phase for particle collisions. It is rebuilt every tick with a
+ * counting sort, so it allocates nothing once its arrays are large enough.
+ */
+public class SpatialHashGrid {
+
+  //Particles wrap 4 pixels past each edge of the window (see ParticlePhysics.wrapX)
+  private static final double EDGE_MARGIN = 4;
+
+  private int columns;
+  private int rows;
+  private double cellSize;
+  private double minX;
+  private double minY;
+  private boolean wrap;
+
+  private int[] cellStart = new int[0];
+  private int[] cellOf = new int[0];
+  private int[] entries = new int[0];
+  private int[] cellFill = new int[0];
+  private int[] candidates = new int[16];
+
+  /**
+   * Sorts every particle into a cell. Cells are as wide as the largest particle, so any particle
+   * that can touch another is in the same or an adjacent cell.
+   *
+   * @param store the particles to sort
+   * @param width the width of the window
+   * @param height the height of the window
+   * @param wrap whether neighbors should be found across the edges of the window
+   */
+  public void rebuild(ParticleStore store, double width, double height, boolean wrap) {
+    int count = store.size();
+    double[] xs = store.getX();
+    double[] ys = store.getY();
+    double[] radii = store.getRadius();
+    double maxRadius = 0;
+    for (int i = 0; i < count; i++) {
+      maxRadius = Math.max(maxRadius, radii[i]);
+    }
+
+    this.cellSize = Math.max(maxRadius * 2, 1);
+    this.minX = -EDGE_MARGIN;
+    this.minY = -EDGE_MARGIN;
+    this.wrap = wrap;
+    //Round down so that a wrapped cell is never narrower than a particle
+    this.columns = Math.max(1, (int) ((width + EDGE_MARGIN * 2) / cellSize));
+    this.rows = Math.max(1, (int) ((height + EDGE_MARGIN * 2) / cellSize));
+
+    int cellCount = columns * rows;
+    if (cellStart.length < cellCount + 1) {
+      cellStart = new int[cellCount + 1];
+    } else {
+      Arrays.fill(cellStart, 0, cellCount + 1, 0);
+    }
+    if (entries.length < count) {
+      entries = new int[count];
+      cellOf = new int[count];
+    }
+
+    //Count the particles in each cell, then turn the counts into starting offsets
+    for (int i = 0; i < count; i++) {
+      int cell = cellIndex(column(xs[i]), row(ys[i]));
+      cellOf[i] = cell;
+      cellStart[cell + 1]++;
+    }
+    for (int cell = 0; cell < cellCount; cell++) {
+      cellStart[cell + 1] += cellStart[cell];
+    }
+    if (cellFill.length < cellCount) {
+      cellFill = new int[cellCount];
+    }
+    System.arraycopy(cellStart, 0, cellFill, 0, cellCount);
+    for (int i = 0; i < count; i++) {
+      entries[cellFill[cellOf[i]]++] = i;
+    }
+  }
+
+  /**
+   * Collects the indices of every particle in the 3x3 block of cells around a point. Read them
+   * with getCandidate. The result is only valid until the next call.
+   *
+   * @return the number of candidates found
+   */
+  public int collectCandidates(double x, double y) {
+    int column = column(x);
+    int row = row(y);
+    int found = 0;
+
+    int columnSpan = wrap ? Math.min(3, columns) : 3;
+    int rowSpan = wrap ? Math.min(3, rows) : 3;
+    for (int dRow = 0; dRow < rowSpan; dRow++) {
+      int r = neighbor(row + dRow - 1, rows);
+      if (r < 0) {
+        continue;
+      }
+      for (int dColumn = 0; dColumn < columnSpan; dColumn++) {
+        int c = neighbor(column + dColumn - 1, columns);
+        if (c < 0) {
+          continue;
+        }
+        int cell = cellIndex(c, r);
+        int start = cellStart[cell];
+        int end = cellStart[cell + 1];
+        if (found + end - start > candidates.length) {
+          candidates = Arrays.copyOf(candidates, Math.max(candidates.length * 2,
+              found + end - start));
+        }
+        System.arraycopy(entries, start, candidates, found, end - start);
+        found += end - start;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return the index of the k-th particle found by the last collectCandidates call
+   */
+  public int getCandidate(int k) {
+    return candidates[k];
+  }
+
+  /**
+   * Finds the column or row of a neighboring cell, wrapping it around the window if needed.
+   *
+   * @return the neighbor's column or row, or -1 if it's off of the grid
+   */
+  private int neighbor(int index, int size) {
+    if (index >= 0 && index < size) {
+      return index;
+    }
+    if (!wrap) {
+      return -1;
+    }
+    return Math.floorMod(index, size);
+  }
+
+  /**
+   * Particles outside of the window are clamped into the border cells. This keeps particles that
+   * are close to each other in neighboring cells.
+   */
+  private int column(double x) {
+    return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellSize)));
+  }
+
+  private int row(double y) {
+    return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellSize)));
+  }
+
+  private int cellIndex(int column, int row) {
+    return row * columns + column;
+  }
+}
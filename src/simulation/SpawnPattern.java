@@ -0,0 +1,87 @@
+package simulation;
+
+import java.util.Random;
+
+/**
+ * Shapes to add lots of particles in at once, in the middle of the world. Particles in a shape are
+ * packed a little more than a diameter apart so they don't start out touching, unless there are
+ * too many to fit in the world that way, and then they are squeezed together until they do.
+ */
+public enum SpawnPattern {
+  //Rows and columns, in a square
+  GRID,
+  //A filled circle, spiraling out from the middle like the seeds of a sunflower
+  DISK,
+  //One circle around the middle
+  RING,
+  //Anywhere in the world, overlapping or not
+  RANDOM;
+
+  //How far apart neighbors start, as a multiple of their diameter
+  private static final double SPACING = 1.1;
+  //The angle between one seed of a sunflower and the next
+  private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+  /**
+   * Adds particles in this shape, at rest. The store only grows once, however many are added.
+   *
+   * @param store the particles to add to
+   * @param count how many particles to add
+   * @param width the width of the world
+   * @param height the height of the world
+   * @param radius the size of each particle
+   * @param edgeHandling how the particles will behave when hitting an edge
+   * @param doCollisions whether or not to have them collide with other particles
+   * @param random where RANDOM gets its positions
+   */
+  public void spawn(ParticleStore store, int count, double width, double height, double radius,
+      EdgeHandling edgeHandling, boolean doCollisions, Random random) {
+    if (count <= 0) {
+      return;
+    }
+    store.ensureCapacity(store.size() + count);
+    double centerX = width / 2;
+    double centerY = height / 2;
+    double spacing = radius * 2 * SPACING;
+    //How far from the middle the shape can reach and stay in the world
+    double reach = Math.min(width, height) / 2 - radius;
+    switch (this) {
+      case GRID:
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (count + columns - 1) / columns;
+        spacing = Math.min(spacing, reach * 2 / Math.max(1, Math.max(columns, rows) - 1));
+        for (int i = 0; i < count; i++) {
+          double x = centerX + (i % columns - (columns - 1) / 2.0) * spacing;
+          double y = centerY + (i / columns - (rows - 1) / 2.0) * spacing;
+          store.add(x, y, 0, 0, radius, edgeHandling, doCollisions);
+        }
+        break;
+      case DISK:
+        //Sunflower seeds end up about 87% as far apart as the side of a square of their share
+        //of the disk, so give each a share a bit bigger than a square spacing wide
+        double diskRadius = Math.min(spacing * Math.sqrt(count / Math.PI) / 0.87, reach);
+        for (int i = 0; i < count; i++) {
+          double distance = diskRadius * Math.sqrt((i + 0.5) / count);
+          double angle = i * GOLDEN_ANGLE;
+          store.add(centerX + distance * Math.cos(angle), centerY + distance * Math.sin(angle),
+              0, 0, radius, edgeHandling, doCollisions);
+        }
+        break;
+      case RING:
+        double ringRadius = Math.min(count * spacing / (2 * Math.PI), reach);
+        for (int i = 0; i < count; i++) {
+          double angle = 2 * Math.PI * i / count;
+          store.add(centerX + ringRadius * Math.cos(angle), centerY + ringRadius * Math.sin(angle),
+              0, 0, radius, edgeHandling, doCollisions);
+        }
+        break;
+      case RANDOM:
+        for (int i = 0; i < count; i++) {
+          double x = radius + random.nextDouble() * Math.max(0, width - radius * 2);
+          double y = radius + random.nextDouble() * Math.max(0, height - radius * 2);
+          store.add(x, y, 0, 0, radius, edgeHandling, doCollisions);
+        }
+        break;
+    }
+  }
+}
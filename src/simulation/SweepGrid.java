@@ -0,0 +1,188 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * Broad phase for finding when fast particles hit something. Every particle is put in each cell
+ * touched by the box around its whole path this step, so any two particles that can meet during
+ * the step share a cell. Paths of wrapping particles that go over an edge are put in the cells on
+ * the other side too.
+ */
+class SweepGrid {
+
+  //What visitCells does with each cell
+  private static final int COUNT = 0;
+  private static final int FILL = 1;
+  private static final int COLLECT = 2;
+
+  private int columns;
+  private int rows;
+  private double cellSize;
+  private double width;
+  private double height;
+  private double wrapWidth;
+  private double wrapHeight;
+
+  private int[] cellStart = new int[0];
+  private int[] cellFill = new int[0];
+  private int[] entries = new int[0];
+  private int[] candidates = new int[16];
+  //The query each particle was last found by, so it's only collected once per query
+  private int[] foundBy = new int[0];
+  private int query;
+
+  /**
+   * Sorts every particle that collides into the cells its path touches.
+   *
+   * @param store the particles to sort
+   * @param moveX how far each particle moves across this step, at the same index as the particle
+   * @param moveY how far each particle moves down this step
+   * @param width the width of the window
+   * @param height the height of the window
+   * @param wrapWidth how far apart the two sides are for particles that wrap
+   * @param wrapHeight how far apart the top and bottom are for particles that wrap
+   */
+  void rebuild(ParticleStore store, double[] moveX, double[] moveY, double width, double height,
+      double wrapWidth, double wrapHeight) {
+    int count = store.size();
+    double[] radii = store.getRadius();
+    double maxRadius = 0;
+    for (int i = 0; i < count; i++) {
+      maxRadius = Math.max(maxRadius, radii[i]);
+    }
+    this.width = width;
+    this.height = height;
+    this.wrapWidth = wrapWidth;
+    this.wrapHeight = wrapHeight;
+    cellSize = Math.max(maxRadius * 2, 1);
+    columns = Math.max(1, (int) Math.ceil(width / cellSize));
+    rows = Math.max(1, (int) Math.ceil(height / cellSize));
+
+    int cellCount = columns * rows;
+    if (cellStart.length < cellCount + 1) {
+      cellStart = new int[cellCount + 1];
+      cellFill = new int[cellCount];
+    } else {
+      Arrays.fill(cellStart, 0, cellCount + 1, 0);
+    }
+    if (foundBy.length < count) {
+      foundBy = new int[Math.max(count, foundBy.length * 2)];
+    }
+
+    //Count the entries in each cell, then turn the counts into starting offsets
+    for (int i = 0; i < count; i++) {
+      if (store.collides(i)) {
+        visitCells(store, moveX, moveY, i, COUNT);
+      }
+    }
+    for (int cell = 0; cell < cellCount; cell++) {
+      cellStart[cell + 1] += cellStart[cell];
+    }
+    if (entries.length < cellStart[cellCount]) {
+      entries = new int[Math.max(cellStart[cellCount], entries.length * 2)];
+    }
+    System.arraycopy(cellStart, 0, cellFill, 0, cellCount);
+    for (int i = 0; i < count; i++) {
+      if (store.collides(i)) {
+        visitCells(store, moveX, moveY, i, FILL);
+      }
+    }
+  }
+
+  /**
+   * Collects every other particle whose path shares a cell with the path of particle i. Read them
+   * with getCandidate. The result is only valid until the next call.
+   *
+   * @return the number of candidates found
+   */
+  int collectCandidates(ParticleStore store, double[] moveX, double[] moveY, int i) {
+    query++;
+    foundBy[i] = query;
+    return visitCells(store, moveX, moveY, i, COLLECT);
+  }
+
+  /**
+   * @return the index of the k-th particle found by the last collectCandidates call
+   */
+  int getCandidate(int k) {
+    return candidates[k];
+  }
+
+  /**
+   * Counts particle i in, files it under, or collects the particles in, every cell the box around
+   * its path touches, and the cells of the box moved over the edges if it wraps.
+   *
+   * @param mode COUNT, FILL or COLLECT
+   * @return how many candidates were collected
+   */
+  private int visitCells(ParticleStore store, double[] moveX, double[] moveY, int i, int mode) {
+    //vy points up, but the moves are already on the screen
+    double x = store.getX()[i];
+    double y = store.getY()[i];
+    double radius = store.getRadius()[i];
+    double left = Math.min(x, x + moveX[i]) - radius;
+    double right = Math.max(x, x + moveX[i]) + radius;
+    double top = Math.min(y, y + moveY[i]) - radius;
+    double bottom = Math.max(y, y + moveY[i]) + radius;
+    boolean wraps = store.getEdgeHandling(i) == EdgeHandling.WRAP;
+
+    int found = 0;
+    for (int shiftY = -1; shiftY <= 1; shiftY++) {
+      double shiftedTop = top + shiftY * wrapHeight;
+      double shiftedBottom = bottom + shiftY * wrapHeight;
+      if (shiftY != 0 && (!wraps || shiftedBottom < 0 || shiftedTop > height)) {
+        continue;
+      }
+      for (int shiftX = -1; shiftX <= 1; shiftX++) {
+        double shiftedLeft = left + shiftX * wrapWidth;
+        double shiftedRight = right + shiftX * wrapWidth;
+        if (shiftX != 0 && (!wraps || shiftedRight < 0 || shiftedLeft > width)) {
+          continue;
+        }
+        int columnEnd = column(shiftedRight);
+        int rowEnd = row(shiftedBottom);
+        for (int row = row(shiftedTop); row <= rowEnd; row++) {
+          for (int column = column(shiftedLeft); column <= columnEnd; column++) {
+            found = visitCell(row * columns + column, i, mode, found);
+          }
+        }
+      }
+    }
+    return found;
+  }
+
+  private int visitCell(int cell, int i, int mode, int found) {
+    switch (mode) {
+      case COUNT:
+        cellStart[cell + 1]++;
+        break;
+      case FILL:
+        entries[cellFill[cell]++] = i;
+        break;
+      default:
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+          int j = entries[k];
+          if (foundBy[j] != query) {
+            foundBy[j] = query;
+            if (found == candidates.length) {
+              candidates = Arrays.copyOf(candidates, found * 2);
+            }
+            candidates[found++] = j;
+          }
+        }
+        break;
+    }
+    return found;
+  }
+
+  /**
+   * Anything outside of the window is clamped into the border cells.
+   */
+  private int column(double x) {
+    return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / cellSize)));
+  }
+
+  private int row(double y) {
+    return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / cellSize)));
+  }
+}
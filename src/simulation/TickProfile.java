@@ -0,0 +1,55 @@
+package simulation;
+
+/**
+ * Times the phases of a World's ticks into a histogram each. Timing is off until it is enabled,
+ * and while it's off a tick only checks that it is.
+ */
+public class TickProfile {
+
+  public enum Phase {
+    //Finding and separating touching particles, and sweeping fast ones
+    COLLIDE,
+    //Moving the particles and applying the gravity to them
+    INTEGRATE
+  }
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+  private volatile boolean enabled;
+
+  TickProfile() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * @return the times recorded for a phase. Read it from one thread at a time
+   */
+  public LatencyHistogram getHistogram(Phase phase) {
+    return histograms[phase.ordinal()];
+  }
+
+  /**
+   * @return when the phase started, or 0 if timing is off
+   */
+  long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records how long a phase took, if timing was on when it started.
+   */
+  void stop(Phase phase, long start) {
+    if (start != 0) {
+      histograms[phase.ordinal()].record(System.nanoTime() - start);
+    }
+  }
+}
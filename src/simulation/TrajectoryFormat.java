@@ -0,0 +1,48 @@
+package simulation;
+
+import java.nio.ByteOrder;
+
+/**
+ * The layout of a trajectory file, written by TrajectoryRecorder and read by TrajectoryReader.
+ * Everything is little endian.
+ *
+ * <pre>
+ *   header   int magic, int version, float width, float height,
+ *            int frame count, int unused, long index offset
+ *   frames   int frame magic, int particle count, long tick, float radius, float max velocity,
+ *            then x, y, vx, vy as floats for each particle
+ *   index    long offset of each frame
+ * </pre>
+ *
+ * <p>A frame has one radius for all of its particles, the first particle's, so a world whose
+ * particles have different radii plays back with all of them that size.
+ *
+ * <p>The frame count and index offset are filled in when the recording is closed. A file that
+ * wasn't closed has a frame count of 0, and is read by walking the frames from the start.
+ */
+final class TrajectoryFormat {
+
+  static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+  static final int MAGIC = 0x4a415254;
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 32;
+  static final int FRAME_COUNT_OFFSET = 16;
+  static final int INDEX_OFFSET_OFFSET = 24;
+
+  static final int FRAME_MAGIC = 0x454d5246;
+  static final int FRAME_HEADER_BYTES = 24;
+  static final int FLOATS_PER_PARTICLE = 4;
+
+  //How much of the file is mapped at a time
+  static final long REGION_BYTES = 64L << 20;
+
+  private TrajectoryFormat() {
+  }
+
+  /**
+   * @return how many bytes a frame of count particles takes
+   */
+  static long frameBytes(int count) {
+    return FRAME_HEADER_BYTES + (long) count * FLOATS_PER_PARTICLE * Float.BYTES;
+  }
+}
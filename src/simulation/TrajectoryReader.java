@@ -0,0 +1,200 @@
+package simulation;
+
+import static simulation.TrajectoryFormat.FLOATS_PER_PARTICLE;
+import static simulation.TrajectoryFormat.FRAME_HEADER_BYTES;
+import static simulation.TrajectoryFormat.FRAME_MAGIC;
+import static simulation.TrajectoryFormat.HEADER_BYTES;
+import static simulation.TrajectoryFormat.ORDER;
+import static simulation.TrajectoryFormat.REGION_BYTES;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the frames of a file written by TrajectoryRecorder, in any order. The file is mapped a
+ * stretch at a time, so playing it from start to end only maps each part of it once, and seeking
+ * only costs one new mapping.
+ */
+public class TrajectoryReader implements AutoCloseable {
+
+  private final FileChannel channel;
+  private final long size;
+  private final double width;
+  private final double height;
+  private final long[] frameOffsets;
+
+  private MappedByteBuffer region;
+  private long regionStart;
+  private float[] data = new float[0];
+  private long frameTick;
+  private double frameMaxVelocity;
+
+  /**
+   * Opens the file and reads its frame index.
+   *
+   * @throws IOException if the file can't be read or isn't a trajectory
+   */
+  public TrajectoryReader(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      size = channel.size();
+      if (size < HEADER_BYTES) {
+        throw new IOException(path + " is too short to be a trajectory");
+      }
+      ByteBuffer header = readAt(0, HEADER_BYTES);
+      if (header.getInt() != TrajectoryFormat.MAGIC) {
+        throw new IOException(path + " isn't a trajectory");
+      }
+      int version = header.getInt();
+      if (version != TrajectoryFormat.VERSION) {
+        throw new IOException(path + " is version " + version + " of the trajectory format");
+      }
+      width = header.getFloat();
+      height = header.getFloat();
+      int frameCount = header.getInt(TrajectoryFormat.FRAME_COUNT_OFFSET);
+      long indexOffset = header.getLong(TrajectoryFormat.INDEX_OFFSET_OFFSET);
+      frameOffsets = frameCount > 0 ? readIndex(indexOffset, frameCount) : findFrames();
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public int getFrameCount() {
+    return frameOffsets.length;
+  }
+
+  public double getWidth() {
+    return width;
+  }
+
+  public double getHeight() {
+    return height;
+  }
+
+  /**
+   * Puts the particles of a frame into store. If store has as many particles as the frame, they
+   * are overwritten in place. Otherwise store is cleared and refilled.
+   *
+   * @param frame the index of the frame, from 0 to getFrameCount - 1
+   */
+  public void readFrame(int frame, ParticleStore store) throws IOException {
+    long offset = frameOffsets[frame];
+    ByteBuffer frameHeader = map(offset, FRAME_HEADER_BYTES);
+    frameHeader.getInt();
+    int count = frameHeader.getInt();
+    frameTick = frameHeader.getLong();
+    double radius = frameHeader.getFloat();
+    frameMaxVelocity = frameHeader.getFloat();
+
+    int floats = count * FLOATS_PER_PARTICLE;
+    if (data.length < floats) {
+      data = new float[floats];
+    }
+    map(offset + FRAME_HEADER_BYTES, (long) floats * Float.BYTES).asFloatBuffer()
+        .get(data, 0, floats);
+
+    if (store.size() != count) {
+      store.clear();
+      store.ensureCapacity(count);
+      for (int i = 0, k = 0; i < count; i++, k += FLOATS_PER_PARTICLE) {
+        store.add(data[k], data[k + 1], data[k + 2], data[k + 3], radius, EdgeHandling.SUSTAIN,
+            false);
+      }
+      return;
+    }
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] vx = store.getVx();
+    double[] vy = store.getVy();
+    double[] radii = store.getRadius();
+    for (int i = 0, k = 0; i < count; i++) {
+      x[i] = data[k++];
+      y[i] = data[k++];
+      vx[i] = data[k++];
+      vy[i] = data[k++];
+      radii[i] = radius;
+    }
+  }
+
+  /**
+   * @return the tick the last frame read was recorded at
+   */
+  public long getFrameTick() {
+    return frameTick;
+  }
+
+  /**
+   * @return the max velocity of the world when the last frame read was recorded
+   */
+  public double getFrameMaxVelocity() {
+    return frameMaxVelocity;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private long[] readIndex(long indexOffset, int frameCount) throws IOException {
+    long[] offsets = new long[frameCount];
+    map(indexOffset, (long) frameCount * Long.BYTES).asLongBuffer().get(offsets);
+    return offsets;
+  }
+
+  /**
+   * Walks the frames from the start of a file that was never closed, stopping at the first one
+   * that isn't all there.
+   */
+  private long[] findFrames() throws IOException {
+    long[] offsets = new long[1024];
+    int frameCount = 0;
+    long position = HEADER_BYTES;
+    while (position + FRAME_HEADER_BYTES <= size) {
+      ByteBuffer frameHeader = readAt(position, FRAME_HEADER_BYTES);
+      int count = frameHeader.getInt(Integer.BYTES);
+      long bytes = TrajectoryFormat.frameBytes(count);
+      if (frameHeader.getInt(0) != FRAME_MAGIC || count < 0 || position + bytes > size) {
+        break;
+      }
+      if (frameCount == offsets.length) {
+        offsets = Arrays.copyOf(offsets, frameCount * 2);
+      }
+      offsets[frameCount++] = position;
+      position += bytes;
+    }
+    return Arrays.copyOf(offsets, frameCount);
+  }
+
+  /**
+   * @return a buffer over [offset, offset + length) of the file, from the mapped stretch
+   *     containing it. Maps a new stretch starting at offset if the current one doesn't
+   */
+  private ByteBuffer map(long offset, long length) throws IOException {
+    if (region == null || offset < regionStart
+        || offset + length > regionStart + region.capacity()) {
+      region = channel.map(MapMode.READ_ONLY, offset,
+          Math.min(Math.max(REGION_BYTES, length), size - offset));
+      regionStart = offset;
+    }
+    int start = (int) (offset - regionStart);
+    return region.slice(start, (int) length).order(ORDER);
+  }
+
+  private ByteBuffer readAt(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ORDER);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
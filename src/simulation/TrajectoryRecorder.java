@@ -0,0 +1,226 @@
+package simulation;
+
+import static simulation.TrajectoryFormat.FLOATS_PER_PARTICLE;
+import static simulation.TrajectoryFormat.FRAME_MAGIC;
+import static simulation.TrajectoryFormat.HEADER_BYTES;
+import static simulation.TrajectoryFormat.ORDER;
+import static simulation.TrajectoryFormat.REGION_BYTES;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes a frame for every tick of a World to a memory mapped file, laid out as in
+ * TrajectoryFormat. Recording only copies the particles into a pooled frame on the simulation
+ * thread. A thread of its own copies the frames on into the mapped file, so the simulation never
+ * waits on the disk, and since only the pooled frames are on the heap, a recording can be far
+ * larger than the heap.
+ *
+ * <p>If the writer falls behind and every pooled frame is waiting to be written, frames are
+ * dropped instead of holding up the simulation.
+ */
+public class TrajectoryRecorder implements AutoCloseable {
+
+  private static final int POOLED_FRAMES = 8;
+
+  private final FileChannel channel;
+  private final BlockingQueue<Frame> freeFrames = new ArrayBlockingQueue<>(POOLED_FRAMES);
+  private final BlockingQueue<Frame> fullFrames = new ArrayBlockingQueue<>(POOLED_FRAMES + 1);
+  private final Thread writer;
+  //Handed to the writer to tell it to finish
+  private final Frame end = new Frame();
+
+  //Only touched by the writer thread until it finishes
+  private MappedByteBuffer region;
+  private long regionStart;
+  private long position = HEADER_BYTES;
+  private long[] frameOffsets = new long[1024];
+  private int frameCount;
+  private IOException failure;
+
+  private volatile long droppedFrames;
+  private boolean closed;
+
+  /**
+   * Creates the file, replacing anything already there, and starts the writer thread.
+   *
+   * @param width the width of the world being recorded
+   * @param height the height of the world being recorded
+   */
+  public TrajectoryRecorder(Path path, double width, double height) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    MappedByteBuffer header = channel.map(MapMode.READ_WRITE, 0, HEADER_BYTES);
+    header.order(ORDER);
+    header.putInt(TrajectoryFormat.MAGIC).putInt(TrajectoryFormat.VERSION)
+        .putFloat((float) width).putFloat((float) height);
+
+    for (int i = 0; i < POOLED_FRAMES; i++) {
+      freeFrames.add(new Frame());
+    }
+    writer = new Thread(this::writeFrames, "Trajectory writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Copies the world's particles into a frame for the writer. Call it from the thread stepping
+   * the world, between ticks.
+   *
+   * @return whether the frame was recorded, false if the writer is too far behind
+   */
+  public boolean record(World world) {
+    Frame frame = freeFrames.poll();
+    if (frame == null) {
+      droppedFrames++;
+      return false;
+    }
+    ParticleStore particles = world.getParticles();
+    frame.copyFrom(particles, world.getTicks(), world.getMaxVelocity());
+    fullFrames.add(frame);
+    return true;
+  }
+
+  /**
+   * @return how many frames were dropped because the writer was behind
+   */
+  public long getDroppedFrames() {
+    return droppedFrames;
+  }
+
+  /**
+   * Waits for the writer to catch up, then writes the frame index and fills in the header.
+   *
+   * @throws IOException if writing a frame failed
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    fullFrames.add(end);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    try {
+      if (failure != null) {
+        throw failure;
+      }
+      long indexOffset = position;
+      MappedByteBuffer index = channel.map(MapMode.READ_WRITE, indexOffset,
+          (long) frameCount * Long.BYTES);
+      index.order(ORDER);
+      index.asLongBuffer().put(frameOffsets, 0, frameCount);
+      index.force();
+      if (region != null) {
+        region.force();
+      }
+
+      MappedByteBuffer header = channel.map(MapMode.READ_WRITE, 0, HEADER_BYTES);
+      header.order(ORDER);
+      header.putInt(TrajectoryFormat.FRAME_COUNT_OFFSET, frameCount);
+      header.putLong(TrajectoryFormat.INDEX_OFFSET_OFFSET, indexOffset);
+      header.force();
+
+      try {
+        //Drop the unused end of the last region. Some systems won't while it's still mapped
+        channel.truncate(indexOffset + (long) frameCount * Long.BYTES);
+      } catch (IOException e) {
+        //The file is still readable, just longer than it needs to be
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Runs on the writer thread until close hands it the end frame.
+   */
+  private void writeFrames() {
+    while (true) {
+      Frame frame;
+      try {
+        frame = fullFrames.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (frame == end) {
+        return;
+      }
+      if (failure == null) {
+        try {
+          write(frame);
+        } catch (IOException e) {
+          failure = e;
+        }
+      }
+      freeFrames.add(frame);
+    }
+  }
+
+  private void write(Frame frame) throws IOException {
+    long bytes = TrajectoryFormat.frameBytes(frame.count);
+    if (region == null || position + bytes > regionStart + region.capacity()) {
+      //Map the next stretch of the file, which also makes it that long
+      region = channel.map(MapMode.READ_WRITE, position, Math.max(REGION_BYTES, bytes));
+      region.order(ORDER);
+      regionStart = position;
+    }
+    int start = (int) (position - regionStart);
+    region.position(start);
+    region.putInt(FRAME_MAGIC).putInt(frame.count).putLong(frame.tick)
+        .putFloat(frame.radius).putFloat(frame.maxVelocity);
+    region.asFloatBuffer().put(frame.data, 0, frame.count * FLOATS_PER_PARTICLE);
+
+    if (frameCount == frameOffsets.length) {
+      frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+    }
+    frameOffsets[frameCount++] = position;
+    position += bytes;
+  }
+
+  /**
+   * One tick's particles, on their way from the simulation thread to the writer.
+   */
+  private static final class Frame {
+
+    private float[] data = new float[0];
+    private int count;
+    private long tick;
+    private float radius;
+    private float maxVelocity;
+
+    void copyFrom(ParticleStore particles, long tick, double maxVelocity) {
+      count = particles.size();
+      if (data.length < count * FLOATS_PER_PARTICLE) {
+        data = new float[count * FLOATS_PER_PARTICLE];
+      }
+      double[] x = particles.getX();
+      double[] y = particles.getY();
+      double[] vx = particles.getVx();
+      double[] vy = particles.getVy();
+      for (int i = 0, k = 0; i < count; i++) {
+        data[k++] = (float) x[i];
+        data[k++] = (float) y[i];
+        data[k++] = (float) vx[i];
+        data[k++] = (float) vy[i];
+      }
+      //Frames only have room for one radius, which is right for the windows since they give every
+      //particle the same one
+      radius = count > 0 ? (float) particles.getRadius()[0] : 0;
+      this.tick = tick;
+      this.maxVelocity = (float) maxVelocity;
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package simulation;
+
+/**
+ * The same gravity everywhere.
+ */
+public class UniformGravity implements GravityModel {
+
+  //Set from any thread, read by the simulation threads
+  private volatile double x;
+  private volatile double y;
+
+  public UniformGravity() {
+  }
+
+  /**
+   * @param y the y component, positive is up
+   */
+  public UniformGravity(double x, double y) {
+    set(x, y);
+  }
+
+  /**
+   * @param y the y component, positive is up
+   */
+  public void set(double x, double y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  public double getX() {
+    return x;
+  }
+
+  /**
+   * @return the y component, positive is up
+   */
+  public double getY() {
+    return y;
+  }
+
+  @Override
+  public void accelerationAt(double x, double y, CartesianVector acceleration) {
+    acceleration.set(this.x, this.y);
+  }
+}
@@ -0,0 +1,287 @@
+package simulation;
+
+import static jdk.incubator.vector.VectorOperators.EQ;
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.GT;
+import static jdk.incubator.vector.VectorOperators.I2D;
+import static jdk.incubator.vector.VectorOperators.LT;
+import static jdk.incubator.vector.VectorOperators.NE;
+import static jdk.incubator.vector.VectorOperators.SQRT;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * IntegrationKernel on the Vector API. Every particle in a vector is put through every kind of
+ * edge, and masks pick which result each one keeps, so nothing branches per particle. Each sum is
+ * the same as in ParticlePhysics, in the same order, and never fused, so the results match it.
+ *
+ * <p>JDK 17 only keeps vectors in registers in short loops. With the whole move in one loop it put
+ * them on the heap, and that was slower than one particle at a time. So moving is split into
+ * three passes over the run, with where the particles are moving to kept in between. Masked
+ * stores, and masks moved from int lanes to double lanes, aren't vector instructions on JDK 17
+ * either. So the flags are widened to doubles before they're compared, and sleeping particles are
+ * blended back to where they were and stored along with the rest.
+ *
+ * <p>Only load it through IntegrationKernel.load, since it can't be loaded without the module.
+ */
+final class VectorIntegrationKernel implements IntegrationKernel {
+
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+  //The flags, one for every double
+  private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class,
+      VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+  private static final int WRAP = EdgeHandling.WRAP.ordinal();
+  private static final int BOUND = EdgeHandling.BOUND.ordinal();
+  private static final int BOUNCE = EdgeHandling.BOUNCE.ordinal();
+
+  private final double width;
+  private final double height;
+  //Where each thread puts where the particles are moving to, between the passes
+  private final ThreadLocal<double[]> nextXScratch = ThreadLocal.withInitial(() -> new double[0]);
+  private final ThreadLocal<double[]> nextYScratch = ThreadLocal.withInitial(() -> new double[0]);
+
+  VectorIntegrationKernel(double width, double height) {
+    this.width = width;
+    this.height = height;
+  }
+
+  @Override
+  public int getLanes() {
+    return DOUBLES.length();
+  }
+
+  @Override
+  public int move(ParticleStore store, double[] timeOfImpact, double timeStep, double friction,
+      int from, int to) {
+    int end = from + DOUBLES.loopBound(to - from);
+    double[] nextX = scratch(nextXScratch, end - from);
+    double[] nextY = scratch(nextYScratch, end - from);
+    advance(store, timeOfImpact, timeStep, 1 - friction, from, end, nextX, nextY);
+    bounceOffTopAndBottom(store, 1 - friction, from, end, nextX, nextY);
+    handleEdges(store, from, end, nextX, nextY);
+    return end;
+  }
+
+  /**
+   * Moves the particles, into nextX and nextY, and bounces the ones that bounce off of the left
+   * or right.
+   */
+  private void advance(ParticleStore store, double[] timeOfImpact, double timeStep, double keep,
+      int from, int to, double[] nextX, double[] nextY) {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] vx = store.getVx();
+    double[] vy = store.getVy();
+    double[] radius = store.getRadius();
+    int[] flags = store.getFlags();
+    for (int i = from; i < to; i += DOUBLES.length()) {
+      DoubleVector flag = toDoubles(IntVector.fromArray(INTS, flags, i));
+      VectorMask<Double> bounces = hasEdge(flag, BOUNCE).and(isAwake(flags, i));
+      DoubleVector startX = DoubleVector.fromArray(DOUBLES, x, i);
+      DoubleVector startY = DoubleVector.fromArray(DOUBLES, y, i);
+      DoubleVector velocityX = DoubleVector.fromArray(DOUBLES, vx, i);
+      DoubleVector velocityY = DoubleVector.fromArray(DOUBLES, vy, i);
+      DoubleVector time = DoubleVector.broadcast(DOUBLES, timeStep);
+      if (timeOfImpact != null) {
+        time = time.mul(DoubleVector.fromArray(DOUBLES, timeOfImpact, i));
+      }
+      DoubleVector movedX = startX.add(velocityX.mul(time));
+      DoubleVector movedY = startY.sub(velocityY.mul(time));
+
+      DoubleVector r = DoubleVector.fromArray(DOUBLES, radius, i);
+      VectorMask<Double> low = movedX.sub(r).compare(LT, 0);
+      VectorMask<Double> hit = movedX.add(r).compare(GT, width).or(low).and(bounces);
+      if (hit.anyTrue()) {
+        DoubleVector edge = DoubleVector.broadcast(DOUBLES, width).sub(r).blend(r, low);
+        DoubleVector part = clampToUnit(edge.sub(startX).div(movedX.sub(startX)));
+        DoubleVector bouncedY = startY.sub(velocityY.mul(time).mul(slowedPart(part, keep)));
+        movedX = movedX.blend(edge.sub(movedX.sub(edge).mul(keep)), hit);
+        movedY = movedY.blend(bouncedY, hit);
+        velocityX.blend(velocityX.mul(-keep), hit).intoArray(vx, i);
+        velocityY.blend(velocityY.mul(keep), hit).intoArray(vy, i);
+      }
+      movedX.intoArray(nextX, i - from);
+      movedY.intoArray(nextY, i - from);
+    }
+  }
+
+  /**
+   * Bounces the particles that bounce off of the top or bottom, after the left and right.
+   */
+  private void bounceOffTopAndBottom(ParticleStore store, double keep, int from, int to,
+      double[] nextX, double[] nextY) {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] vx = store.getVx();
+    double[] vy = store.getVy();
+    double[] radius = store.getRadius();
+    int[] flags = store.getFlags();
+    for (int i = from; i < to; i += DOUBLES.length()) {
+      DoubleVector movedY = DoubleVector.fromArray(DOUBLES, nextY, i - from);
+      DoubleVector r = DoubleVector.fromArray(DOUBLES, radius, i);
+      VectorMask<Double> low = movedY.sub(r).compare(LT, 0);
+      VectorMask<Double> hit = movedY.add(r).compare(GT, height).or(low);
+      if (!hit.anyTrue()) {
+        continue;
+      }
+      DoubleVector flag = toDoubles(IntVector.fromArray(INTS, flags, i));
+      hit = hit.and(hasEdge(flag, BOUNCE)).and(isAwake(flags, i));
+      if (!hit.anyTrue()) {
+        continue;
+      }
+      DoubleVector startX = DoubleVector.fromArray(DOUBLES, x, i);
+      DoubleVector startY = DoubleVector.fromArray(DOUBLES, y, i);
+      DoubleVector movedX = DoubleVector.fromArray(DOUBLES, nextX, i - from);
+      DoubleVector edge = DoubleVector.broadcast(DOUBLES, height).sub(r).blend(r, low);
+      DoubleVector part = clampToUnit(edge.sub(startY).div(movedY.sub(startY)));
+      movedX.blend(startX.add(movedX.sub(startX).mul(slowedPart(part, keep))), hit)
+          .intoArray(nextX, i - from);
+      movedY.blend(edge.sub(movedY.sub(edge).mul(keep)), hit).intoArray(nextY, i - from);
+      DoubleVector velocityX = DoubleVector.fromArray(DOUBLES, vx, i);
+      DoubleVector velocityY = DoubleVector.fromArray(DOUBLES, vy, i);
+      velocityX.blend(velocityX.mul(keep), hit).intoArray(vx, i);
+      velocityY.blend(velocityY.mul(-keep), hit).intoArray(vy, i);
+    }
+  }
+
+  /**
+   * Wraps or bounds the moved particles, and puts the awake ones where they moved to. Bound
+   * particles lose their speed into the edges that stopped them.
+   */
+  private void handleEdges(ParticleStore store, int from, int to, double[] nextX,
+      double[] nextY) {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] vx = store.getVx();
+    double[] vy = store.getVy();
+    double[] radius = store.getRadius();
+    int[] flags = store.getFlags();
+    for (int i = from; i < to; i += DOUBLES.length()) {
+      VectorMask<Double> awake = isAwake(flags, i);
+      if (!awake.anyTrue()) {
+        continue;
+      }
+      DoubleVector flag = toDoubles(IntVector.fromArray(INTS, flags, i));
+      VectorMask<Double> wraps = hasEdge(flag, WRAP);
+      VectorMask<Double> bounds = hasEdge(flag, BOUND);
+      //Bouncing particles are bounded too, in case a long move overshoots after the reflection
+      VectorMask<Double> bounded = bounds.or(hasEdge(flag, BOUNCE));
+      DoubleVector movedX = DoubleVector.fromArray(DOUBLES, nextX, i - from);
+      DoubleVector movedY = DoubleVector.fromArray(DOUBLES, nextY, i - from);
+      DoubleVector r = DoubleVector.fromArray(DOUBLES, radius, i);
+      DoubleVector boundedX = bound(movedX, r, width);
+      DoubleVector boundedY = bound(movedY, r, height);
+      DoubleVector.fromArray(DOUBLES, x, i).blend(movedX
+          .blend(wrap(movedX, width), wraps)
+          .blend(boundedX, bounded), awake)
+          .intoArray(x, i);
+      DoubleVector.fromArray(DOUBLES, y, i).blend(movedY
+          .blend(wrap(movedY, height), wraps)
+          .blend(boundedY, bounded), awake)
+          .intoArray(y, i);
+
+      VectorMask<Double> stopped = bounds.and(awake);
+      if (!boundedX.compare(NE, movedX).or(boundedY.compare(NE, movedY)).and(stopped)
+          .anyTrue()) {
+        continue;
+      }
+      DoubleVector velocityX = DoubleVector.fromArray(DOUBLES, vx, i);
+      DoubleVector velocityY = DoubleVector.fromArray(DOUBLES, vy, i);
+      //vy points up, so a particle stopped by the bottom edge was moving down
+      VectorMask<Double> intoX = boundedX.compare(LT, movedX).and(velocityX.compare(GT, 0))
+          .or(boundedX.compare(GT, movedX).and(velocityX.compare(LT, 0)));
+      VectorMask<Double> intoY = boundedY.compare(LT, movedY).and(velocityY.compare(LT, 0))
+          .or(boundedY.compare(GT, movedY).and(velocityY.compare(GT, 0)));
+      velocityX.blend(0, intoX.and(stopped)).intoArray(vx, i);
+      velocityY.blend(0, intoY.and(stopped)).intoArray(vy, i);
+    }
+  }
+
+  @Override
+  public int accelerate(ParticleStore store, double[] accelerationX, double[] accelerationY,
+      double timeStep, double maxVelocity, int from, int to) {
+    double[] vx = store.getVx();
+    double[] vy = store.getVy();
+    int[] flags = store.getFlags();
+    double maxVelocitySquared = maxVelocity * maxVelocity;
+    int end = from + DOUBLES.loopBound(to - from);
+    for (int i = from; i < end; i += DOUBLES.length()) {
+      VectorMask<Double> awake = isAwake(flags, i);
+      if (!awake.anyTrue()) {
+        continue;
+      }
+      DoubleVector velocityX = DoubleVector.fromArray(DOUBLES, vx, i);
+      DoubleVector velocityY = DoubleVector.fromArray(DOUBLES, vy, i);
+      DoubleVector newX = DoubleVector.fromArray(DOUBLES, accelerationX, i)
+          .mul(timeStep).add(velocityX);
+      DoubleVector newY = DoubleVector.fromArray(DOUBLES, accelerationY, i)
+          .mul(timeStep).add(velocityY);
+      DoubleVector speedSquared = newX.mul(newX).add(newY.mul(newY));
+      VectorMask<Double> tooFast = speedSquared.compare(GT, maxVelocitySquared);
+      if (tooFast.anyTrue()) {
+        DoubleVector scale = DoubleVector.broadcast(DOUBLES, maxVelocity)
+            .div(speedSquared.lanewise(SQRT));
+        newX = newX.blend(newX.mul(scale), tooFast);
+        newY = newY.blend(newY.mul(scale), tooFast);
+      }
+      velocityX.blend(newX, awake).intoArray(vx, i);
+      velocityY.blend(newY, awake).intoArray(vy, i);
+    }
+    return end;
+  }
+
+  private static VectorMask<Double> isAwake(int[] flags, int i) {
+    return toDoubles(IntVector.fromArray(INTS, flags, i).and(ParticleStore.ASLEEP)).compare(EQ, 0);
+  }
+
+  private static double[] scratch(ThreadLocal<double[]> scratch, int length) {
+    if (scratch.get().length < length) {
+      scratch.set(new double[length]);
+    }
+    return scratch.get();
+  }
+
+  private static DoubleVector toDoubles(IntVector ints) {
+    return (DoubleVector) ints.convertShape(I2D, DOUBLES, 0);
+  }
+
+  /**
+   * The edge handling is the highest thing packed into the flags, so every flag with the same
+   * edge handling is between the same two values. Shifting the flags down doesn't become a vector
+   * instruction on JDK 17, but comparing them does.
+   */
+  private static VectorMask<Double> hasEdge(DoubleVector flags, int edge) {
+    return flags.compare(GE, edge << ParticleStore.EDGE_SHIFT)
+        .and(flags.compare(LT, (edge + 1) << ParticleStore.EDGE_SHIFT));
+  }
+
+  /**
+   * @return how much of the move is kept, when part of it was before reaching the edge and the
+   *     rest was slowed by the friction
+   */
+  private static DoubleVector slowedPart(DoubleVector part, double keep) {
+    return part.add(DoubleVector.broadcast(DOUBLES, 1).sub(part).mul(keep));
+  }
+
+  private static DoubleVector clampToUnit(DoubleVector value) {
+    return value.min(1).max(0);
+  }
+
+  /**
+   * The same as ParticlePhysics.boundX and boundY
+   */
+  private static DoubleVector bound(DoubleVector value, DoubleVector radius, double size) {
+    return value.min(DoubleVector.broadcast(DOUBLES, size).sub(radius)).max(radius);
+  }
+
+  /**
+   * The same as ParticlePhysics.wrapX and wrapY
+   */
+  private static DoubleVector wrap(DoubleVector value, double size) {
+    return value.blend(-4, value.compare(GT, size + 4)).blend(size + 4, value.compare(LT, -4));
+  }
+}
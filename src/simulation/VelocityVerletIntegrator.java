@@ -0,0 +1,18 @@
+package simulation;
+
+/**
+ * Velocity Verlet, also known as kick-drift-kick leapfrog. Half of the gravity is added before
+ * the particles move and half after, so the velocity and the position stay in step. Orbits stay
+ * round at much longer steps than with Euler, and energy doesn't drift. The gravity from the end
+ * of each step is reused at the start of the next, so it's still one look up of the gravity a
+ * step.
+ */
+public class VelocityVerletIntegrator implements Integrator {
+
+  @Override
+  public void advance(Motion motion, double time) {
+    motion.kickAgain(time / 2);
+    motion.drift(time);
+    motion.kick(time / 2);
+  }
+}
@@ -0,0 +1,260 @@
+package simulation;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Everything the physics needs: the particles, the size of the world and the rules they move by.
+ * A World doesn't know about threads or the screen. Call step to move it forward one tick, or
+ * hand it to a Simulation.
+ *
+ * <p>The settings can be changed from any thread, and take effect from the next tick.
+ */
+public class World {
+
+  private final ParticleStore particles;
+  private final ParticlePhysics physics;
+  private final ObstacleField obstacles;
+  private final double width;
+  private final double height;
+  private volatile GravityModel gravity = new UniformGravity();
+  private volatile double friction;
+  private volatile double maxVelocity = Double.MAX_VALUE;
+  private volatile double timeStep = 1;
+  private volatile Integrator integrator = new EulerIntegrator();
+  private volatile int substeps = 1;
+  //Set by a Simulation's governor, and left out of snapshots since it isn't the world's own setting
+  private volatile boolean halvingSubsteps;
+  private volatile double sleepSpeed = 0.05;
+  private volatile int sleepTicks = 60;
+  private volatile int collisionInterval = 1;
+  private final AtomicBoolean wakeRequested = new AtomicBoolean();
+  private final TickProfile profile = new TickProfile();
+  private volatile long ticks;
+  private volatile double time;
+
+  public World(double width, double height) {
+    this(new ParticleStore(), width, height);
+  }
+
+  /**
+   * @param particles the particles. Worlds can share particles, as long as they take turns
+   *     stepping them
+   */
+  public World(ParticleStore particles, double width, double height) {
+    this.particles = particles;
+    this.width = width;
+    this.height = height;
+    this.obstacles = new ObstacleField(width, height);
+    this.physics = new ParticlePhysics(this);
+  }
+
+  /**
+   * Moves every particle forward one tick.
+   */
+  public void step() {
+    physics.step();
+    ticks++;
+    time += timeStep;
+  }
+
+  /**
+   * @return how many particles are moved at a time. More than 1 when the JVM was started with
+   *     --add-modules jdk.incubator.vector, so the Vector API is there
+   */
+  public int getIntegrationLanes() {
+    return physics.getIntegrationLanes();
+  }
+
+  public ParticleStore getParticles() {
+    return particles;
+  }
+
+  public double getWidth() {
+    return width;
+  }
+
+  public double getHeight() {
+    return height;
+  }
+
+  /**
+   * @return the obstacles the particles bounce off of. Only change them between ticks, with a
+   *     Simulation's edit
+   */
+  public ObstacleField getObstacles() {
+    return obstacles;
+  }
+
+  public GravityModel getGravity() {
+    return gravity;
+  }
+
+  public void setGravity(GravityModel gravity) {
+    this.gravity = gravity;
+    wakeAll();
+  }
+
+  /**
+   * @return the percent of their speed particles lose bouncing off an edge, from 0 to 1
+   */
+  public double getFriction() {
+    return friction;
+  }
+
+  public void setFriction(double friction) {
+    this.friction = friction;
+    wakeAll();
+  }
+
+  /**
+   * @return the speed cap of the particles, which is also the speed drawn as the fastest color
+   */
+  public double getMaxVelocity() {
+    return maxVelocity;
+  }
+
+  public void setMaxVelocity(double maxVelocity) {
+    this.maxVelocity = maxVelocity;
+    wakeAll();
+  }
+
+  /**
+   * @return how many 10 ms units of time one step covers. The windows step 2 at a time
+   */
+  public double getTimeStep() {
+    return timeStep;
+  }
+
+  /**
+   * Makes each step cover more or less time. Velocities are still in pixels per 10 ms unit, so a
+   * time step of 2 moves the particles twice as far a step, and half as many steps a second give
+   * the same motion. Fast particles are swept along their path, so they don't pass through each
+   * other however far they move in one step.
+   */
+  public void setTimeStep(double timeStep) {
+    this.timeStep = timeStep;
+  }
+
+  public Integrator getIntegrator() {
+    return integrator;
+  }
+
+  /**
+   * Sets how the particles are moved and accelerated each step.
+   */
+  public void setIntegrator(Integrator integrator) {
+    this.integrator = integrator;
+    wakeAll();
+  }
+
+  /**
+   * @return how many times the integrator runs each step
+   */
+  public int getSubsteps() {
+    return substeps;
+  }
+
+  /**
+   * Splits the integration of each step into substeps shorter steps, each finding the gravity
+   * again. More is more accurate and slower. The particles are still only checked for collisions
+   * once a step.
+   *
+   * @param substeps at least 1
+   */
+  public void setSubsteps(int substeps) {
+    this.substeps = Math.max(1, substeps);
+  }
+
+  boolean isHalvingSubsteps() {
+    return halvingSubsteps;
+  }
+
+  /**
+   * Runs the integrator half as many times a step as getSubsteps says, but at least once, without
+   * changing the substeps setting itself.
+   */
+  void setHalvingSubsteps(boolean halvingSubsteps) {
+    this.halvingSubsteps = halvingSubsteps;
+  }
+
+  /**
+   * @return how far a particle can move in a unit of time and still count as still, in pixels
+   */
+  public double getSleepSpeed() {
+    return sleepSpeed;
+  }
+
+  /**
+   * Once a particle has moved less than sleepSpeed a unit of time for sleepTicks units in a row, it
+   * goes to sleep and stops being stepped, however many ticks that takes. Awake particles rest on
+   * sleeping ones like on a wall. One that hits a sleeping particle harder than that wakes it,
+   * along with every sleeping particle resting on it, and wakeAll wakes everything.
+   *
+   * @param sleepSpeed how far a particle can move in a unit of time and still count as still. 0
+   *     turns sleeping off
+   */
+  public void setSleepSpeed(double sleepSpeed) {
+    this.sleepSpeed = sleepSpeed;
+    wakeAll();
+  }
+
+  /**
+   * @return how many ticks apart pairs of particles are checked for collisions
+   */
+  public int getCollisionInterval() {
+    return collisionInterval;
+  }
+
+  /**
+   * Only checks pairs of particles for collisions every collisionInterval ticks, which is most of
+   * the cost of a tick. Particles can overlap in the ticks between. Fast particles are still
+   * swept every tick, so they still can't pass through each other.
+   */
+  public void setCollisionInterval(int collisionInterval) {
+    this.collisionInterval = collisionInterval;
+  }
+
+  public int getSleepTicks() {
+    return sleepTicks;
+  }
+
+  public void setSleepTicks(int sleepTicks) {
+    this.sleepTicks = sleepTicks;
+  }
+
+  /**
+   * Wakes every particle before the next tick. Call it after changing anything the particles
+   * move by, like the gravity, that the World doesn't know about.
+   */
+  public void wakeAll() {
+    wakeRequested.set(true);
+  }
+
+  /**
+   * @return whether wakeAll was called since the last time this was
+   */
+  boolean takeWakeRequest() {
+    return wakeRequested.getAndSet(false);
+  }
+
+  /**
+   * @return how many times step has been called
+   */
+  public long getTicks() {
+    return ticks;
+  }
+
+  /**
+   * @return how many 10 ms units of time have been simulated, adding up each step's time step
+   */
+  public double getTime() {
+    return time;
+  }
+
+  /**
+   * @return how long the phases of each step take, once it's enabled
+   */
+  public TickProfile getProfile() {
+    return profile;
+  }
+}
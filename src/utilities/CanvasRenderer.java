@@ -0,0 +1,45 @@
+package utilities;
+
+import javafx.scene.Group;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Draws every particle onto a single Canvas in one pass. This is much cheaper than a node per
+ * particle once there are thousands of them.
+ */
+public class CanvasRenderer implements ParticleRenderer {
+
+  private final Canvas canvas;
+
+  /**
+   * @param particleGroup the Group the Canvas is placed in
+   * @param width the width of the Canvas
+   * @param height the height of the Canvas
+   */
+  public CanvasRenderer(Group particleGroup, double width, double height) {
+    canvas = new Canvas(width, height);
+    //Let clicks through to the window behind the particles
+    canvas.setMouseTransparent(true);
+    particleGroup.getChildren().setAll(canvas);
+  }
+
+  @Override
+  public void render(ParticleSnapshot snapshot, double alpha) {
+    GraphicsContext graphics = canvas.getGraphicsContext2D();
+    graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+    int currentColor = -1;
+    for (int i = 0; i < snapshot.getCount(); i++) {
+      //Only change the fill when the color actually changes
+      int color = snapshot.getColorIndex(i);
+      if (color != currentColor) {
+        graphics.setFill(SpeedPalette.getColor(color));
+        currentColor = color;
+      }
+      double radius = snapshot.getRadius(i);
+      graphics.fillOval(snapshot.getX(i, alpha) - radius, snapshot.getY(i, alpha) - radius,
+          radius * 2, radius * 2);
+    }
+  }
+}
@@ -1,32 +1,157 @@
 package utilities;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import hitboxes.HitBox;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javafx.animation.AnimationTimer;
 import javafx.fxml.FXML;
 import javafx.scene.Group;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Slider;
+import javafx.scene.control.ToggleButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
-import javafx.util.Duration;
+import javafx.scene.shape.Shape;
+import javafx.scene.text.Text;
+import javafx.stage.FileChooser;
+import simulation.CartesianVector;
+import simulation.EdgeHandling;
+import simulation.LatencyHistogram;
+import simulation.ParticleStore;
+import simulation.QualityGovernor;
+import simulation.Simulation;
+import simulation.SpawnPattern;
+import simulation.TickProfile;
+import simulation.TrajectoryRecorder;
+import simulation.World;
+import simulation.WorldSnapshot;
 
 
 /**
- * Abstract class used by controllers to manage particles.
+ * Abstract class used by controllers to manage particles. The physics live in a World; the
+ * controllers set it up from their controls and draw it.
+ *
+ * <p>Every controller has its own particles, World and simulation thread, so screens don't step
+ * each other's particles. Only the screen showing runs, unless it's set to run in the background.
+ * The SceneController resumes and suspends them as it switches screens.
  */
 public abstract class Controller {
 
-  protected static ObservableList<GravityParticle> particles = FXCollections.observableArrayList();
+  public static final double WINDOW_WIDTH = 1920;
+  public static final double WINDOW_HEIGHT = 1050;
+  //The length of one unit of simulated time. Velocities and gravity are measured per unit
+  private static final long TIME_UNIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  //How many units a tick simulates. Fewer, longer ticks find collisions less often, and the
+  //sweep keeps fast particles from passing through each other in between
+  private static final int TIME_STEP = 2;
+  protected static final long TICK_NANOS = TIME_STEP * TIME_UNIT_NANOS;
+  //How often the performance numbers are updated while they're showing
+  private static final long PERFORMANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+  //How many snapshots apart the colors are worked out when the governor slows them down
+  private static final int SLOW_COLOR_INTERVAL = 4;
+
+  protected final ParticleStore particles = new ParticleStore();
 
   @FXML
   protected AnchorPane root;
+  @FXML
+  protected ToggleButton canvasButton;
+  @FXML
+  protected ToggleButton recordButton;
+  @FXML
+  protected ToggleButton replayButton;
+  @FXML
+  protected Slider replaySlider;
+  @FXML
+  protected ToggleButton performanceButton;
+  @FXML
+  protected Text performanceText;
+
+  protected final World world = new World(particles, WINDOW_WIDTH, WINDOW_HEIGHT);
+  private final Simulation simulation = new Simulation(world);
+  private final SnapshotBuffer snapshots = new SnapshotBuffer();
+  //Only used on the simulation thread
+  private final Random spawnRandom = new Random();
+  //The obstacles and what they're drawn with, in the same order
+  private final List<HitBox> obstacles = new ArrayList<>();
+  private final List<Shape> obstacleViews = new ArrayList<>();
+  //Draws the newest snapshot every frame while the screen is showing
+  private final AnimationTimer frameTimer = new AnimationTimer() {
+    @Override
+    public void handle(long now) {
+      syncParticleViews(now);
+    }
+  };
+  private boolean active;
+  private boolean runsInBackground;
+  private ParticleRenderer renderer;
+  private TrajectoryRecorder recorder;
+  private TrajectoryPlayer player;
 
+  //Performance numbers, only collected while they're showing
+  private final LatencyHistogram renderTimes = new LatencyHistogram();
+  private boolean showingPerformance;
+  private long performanceStart;
+  private long performanceTicks;
+  private long performanceFrames;
+
+  /**
+   * Nothing runs until the controller is resumed, when its screen is shown.
+   */
   protected Controller() {
-    //Create the task to update particles
-    Timeline positionUpdater = new Timeline(new KeyFrame(Duration.millis(10),
-        (event) -> updateParticles()));
-    positionUpdater.setCycleCount(Timeline.INDEFINITE);
-    positionUpdater.play();
+    world.setTimeStep(TIME_STEP);
+  }
+
+  /**
+   * Starts the physics on their own thread, if they aren't already running, and draws whatever
+   * they last finished every frame. Everything picks up where it was suspended.
+   */
+  public void resume() {
+    active = true;
+    if (player == null) {
+      startSimulation();
+    }
+    frameTimer.start();
+  }
+
+  /**
+   * Stops drawing, and stops the physics unless they run in the background. Edits made while
+   * they're stopped are made when they start again.
+   */
+  public void suspend() {
+    active = false;
+    frameTimer.stop();
+    if (!runsInBackground) {
+      simulation.stop();
+    }
+  }
+
+  public boolean isActive() {
+    return active;
+  }
+
+  /**
+   * Keeps the physics running while the screen is hidden, on its own thread, instead of stopping
+   * them. Nothing is drawn until it's shown again.
+   */
+  public void setRunsInBackground(boolean runsInBackground) {
+    this.runsInBackground = runsInBackground;
+    if (!active && player == null) {
+      if (runsInBackground) {
+        startSimulation();
+      } else {
+        simulation.stop();
+      }
+    }
+  }
+
+  public boolean runsInBackground() {
+    return runsInBackground;
   }
 
   /**
@@ -36,27 +161,35 @@ public abstract class Controller {
   @FXML
   protected abstract void initialize();
 
-  public abstract double getMaxVelocity();
-
-  public abstract double getFriction();
-
   /**
    * Used to reset the scene to the original format.
    */
   public abstract void reset();
 
   /**
-   * Requires a parameter if gravity differs for each particle.
+   * Finds the gravity the world's GravityModel previews, for display and setup instead of the
+   * physics. It doesn't wait for the current tick, so it's cheap enough to call on every event.
    *
-   * @param target the target particle
-   * @return the Vector representing the acceleration of gravity acting on target
+   * @return the Vector representing the acceleration of gravity acting on the target
    */
-  public abstract Vector getGravityVector(GravityParticle target);
-
-  ObservableList<GravityParticle> getParticles() {
-    return particles;
+  public Vector getGravityVector(double x, double y) {
+    CartesianVector acceleration = new CartesianVector();
+    world.getGravity().previewAccelerationAt(x, y, acceleration);
+    return Vector.vectorFromXandY(acceleration.getX(), acceleration.getY());
   }
 
+  /**
+   * Puts what the controls give new particles into a snapshot being saved, since the World
+   * doesn't know.
+   */
+  protected abstract void saveControls(WorldSnapshot snapshot);
+
+  /**
+   * Sets the controls to match a snapshot being loaded. The World itself is restored after any
+   * edits this queues, so they don't overwrite what was loaded.
+   */
+  protected abstract void loadControls(WorldSnapshot snapshot);
+
   /**
    * Used by to add a particle on the screen at the cursor location.
    *
@@ -65,23 +198,432 @@ public abstract class Controller {
   @FXML
   protected abstract void createParticle(MouseEvent event);
 
-  private void updateParticles() {
-    for (GravityParticle particle : particles) {
-      particle.handleCollision();
-      particle.updatePosition();
-      particle.updateVelocity();
+  /**
+   * Queues a change to the particles. The simulation thread makes it before its next tick, so
+   * changes never happen in the middle of one.
+   */
+  protected void editParticles(Runnable edit) {
+    simulation.edit(world -> edit.run());
+  }
+
+  /**
+   * Runs the physics faster than real time for a while, still drawing the newest state every
+   * frame. Only while they're running, so not while hidden unless they run in the background.
+   *
+   * @param warp how many times as fast as real time to run. 1 goes back to real time, and
+   *     Double.POSITIVE_INFINITY runs them as fast as they can
+   * @param seconds how many seconds of simulated time to warp through, from now
+   */
+  protected void setWarp(double warp, double seconds) {
+    double units = seconds * TimeUnit.SECONDS.toNanos(1) / TIME_UNIT_NANOS;
+    simulation.setWarp(warp, world.getTime() + units);
+  }
+
+  /**
+   * @return whether the physics are still warping, which stops by itself once its time is up
+   */
+  protected boolean isWarping() {
+    return simulation.getWarp() != 1;
+  }
+
+  /**
+   * @return how many seconds of time the physics have simulated
+   */
+  protected double getSimulatedSeconds() {
+    return world.getTime() * TIME_UNIT_NANOS / TimeUnit.SECONDS.toNanos(1);
+  }
+
+  /**
+   * Runs on the simulation thread after it finishes its ticks.
+   *
+   * @param spanNanos how much simulated time passed since the last snapshot
+   */
+  private void publishSnapshot(long spanNanos) {
+    simulation.read(
+        world -> snapshots.publish(world.getParticles(), world.getMaxVelocity(), spanNanos));
+  }
+
+  /**
+   * Draws the newest snapshot with the current renderer, part of the way from the state before
+   * it so that motion stays smooth when frames and ticks don't line up.
+   *
+   * @param now the time of the current frame, in nanoseconds
+   */
+  private void syncParticleViews(long now) {
+    QualityGovernor governor = simulation.getGovernor();
+    boolean slowColors = governor.getQuality() == QualityGovernor.Quality.SLOW_COLORS;
+    snapshots.setColorInterval(slowColors ? SLOW_COLOR_INTERVAL : 1);
+
+    long start = System.nanoTime();
+    ParticleSnapshot snapshot = player != null ? replaySnapshot(now) : snapshots.acquire();
+    getRenderer().render(snapshot, snapshot.interpolationAlpha(now));
+    long cost = System.nanoTime() - start;
+    governor.recordFrame(cost);
+    if (showingPerformance) {
+      renderTimes.record(cost);
+      performanceFrames++;
+      if (now - performanceStart >= PERFORMANCE_NANOS) {
+        updatePerformanceText(now);
+      }
+    }
+  }
+
+  private void startSimulation() {
+    simulation.start(getClass().getSimpleName(), TICK_NANOS, this::publishSnapshot);
+  }
+
+  private ParticleRenderer getRenderer() {
+    if (renderer == null) {
+      renderer = new NodeRenderer(getParticleGroup());
+    }
+    return renderer;
+  }
+
+  /**
+   * Switches between drawing a node per particle and drawing every particle onto a Canvas.
+   */
+  @FXML
+  protected void toggleRenderMode() {
+    getParticleGroup().getChildren().clear();
+    if (canvasButton.isSelected()) {
+      renderer = new CanvasRenderer(getParticleGroup(), WINDOW_WIDTH, WINDOW_HEIGHT);
+    } else {
+      renderer = new NodeRenderer(getParticleGroup());
+    }
+  }
+
+  /**
+   * Shows or hides how fast the simulation and the drawing are running.
+   */
+  @FXML
+  protected void togglePerformance() {
+    showingPerformance = performanceButton.isSelected();
+    world.getProfile().setEnabled(showingPerformance);
+    performanceText.setText(showingPerformance ? "Measuring..." : "");
+    if (showingPerformance) {
+      //Start counting from now, instead of from whenever they were last showing
+      startPerformanceInterval(System.nanoTime(), world.getTicks());
+      renderTimes.summarizeInterval();
+      for (TickProfile.Phase phase : TickProfile.Phase.values()) {
+        world.getProfile().getHistogram(phase).summarizeInterval();
+      }
+    }
+  }
+
+  private void startPerformanceInterval(long now, long ticks) {
+    performanceStart = now;
+    performanceTicks = ticks;
+    performanceFrames = 0;
+  }
+
+  /**
+   * Shows the rates and the phase times since the last update.
+   */
+  private void updatePerformanceText(long now) {
+    long[] counts = new long[3];
+    simulation.read(world -> {
+      counts[0] = world.getTicks();
+      counts[1] = world.getParticles().size();
+      counts[2] = world.getParticles().getSleepingCount();
+    });
+    double seconds = (now - performanceStart) / 1e9;
+    TickProfile profile = world.getProfile();
+    performanceText.setText(String.format("Particles: %d (%d asleep)%n"
+            + "Ticks: %.1f/s of %.0f/s%n"
+            + "Frames: %.1f/s%n"
+            + "Quality: %s%n"
+            + "%-10s%8s%8s%8s%n%s%s%s",
+        counts[1], counts[2],
+        (counts[0] - performanceTicks) / seconds, 1e9 / TICK_NANOS,
+        performanceFrames / seconds,
+        simulation.getGovernor().getQuality(),
+        "ms", "p50", "p99", "max",
+        formatTimes("Collide", profile.getHistogram(TickProfile.Phase.COLLIDE)),
+        formatTimes("Integrate", profile.getHistogram(TickProfile.Phase.INTEGRATE)),
+        formatTimes("Render", renderTimes)));
+    startPerformanceInterval(now, counts[0]);
+  }
+
+  private static String formatTimes(String name, LatencyHistogram histogram) {
+    LatencyHistogram.Summary times = histogram.summarizeInterval();
+    return String.format("%-10s%8.2f%8.2f%8.2f%n", name, times.getMedian() / 1e6,
+        times.getP99() / 1e6, times.getMax() / 1e6);
+  }
+
+  /**
+   * Starts recording every tick to a file the user picks, or stops and finishes the file.
+   */
+  @FXML
+  protected void toggleRecording() {
+    if (!recordButton.isSelected()) {
+      stopRecording();
+      return;
+    }
+    File file = chooseFile("Trajectories", "trajectory", true);
+    if (file == null) {
+      recordButton.setSelected(false);
+      return;
+    }
+    try {
+      recorder = new TrajectoryRecorder(file.toPath(), WINDOW_WIDTH, WINDOW_HEIGHT);
+      simulation.setRecorder(recorder);
+    } catch (IOException e) {
+      recorder = null;
+      recordButton.setSelected(false);
+      showError("Couldn't start recording", e);
+    }
+  }
+
+  private void stopRecording() {
+    if (recorder == null) {
+      return;
+    }
+    simulation.setRecorder(null);
+    try {
+      recorder.close();
+    } catch (IOException e) {
+      showError("Couldn't finish the recording", e);
+    }
+    recorder = null;
+  }
+
+  /**
+   * Pauses the physics and plays back a recording the user picks, or goes back to the physics.
+   */
+  @FXML
+  protected void toggleReplay() {
+    if (!replayButton.isSelected()) {
+      stopReplay();
+      return;
+    }
+    File file = chooseFile("Trajectories", "trajectory", false);
+    if (file == null) {
+      replayButton.setSelected(false);
+      return;
+    }
+    try {
+      player = new TrajectoryPlayer(file.toPath(), TICK_NANOS);
+    } catch (IOException e) {
+      replayButton.setSelected(false);
+      showError("Couldn't open the recording", e);
+      return;
+    }
+    recordButton.setSelected(false);
+    stopRecording();
+    simulation.stop();
+    replaySlider.setMax(Math.max(0, player.getFrameCount() - 1));
+    replaySlider.setValue(0);
+    replaySlider.setDisable(false);
+  }
+
+  /**
+   * Jumps the playback to the frame picked on the slider.
+   */
+  @FXML
+  protected void seekReplay() {
+    if (player != null) {
+      player.seek((int) replaySlider.getValue(), System.nanoTime());
+    }
+  }
+
+  private void stopReplay() {
+    if (player == null) {
+      return;
+    }
+    try {
+      player.close();
+    } catch (IOException e) {
+      showError("Couldn't close the recording", e);
+    }
+    player = null;
+    replaySlider.setDisable(true);
+    if (active || runsInBackground) {
+      startSimulation();
     }
   }
 
+  /**
+   * @return the frame of the recording that should be showing now
+   */
+  private ParticleSnapshot replaySnapshot(long now) {
+    try {
+      ParticleSnapshot snapshot = player.snapshotAt(now);
+      if (!replaySlider.isValueChanging() && !replaySlider.isPressed()) {
+        replaySlider.setValue(player.getFrame());
+      }
+      return snapshot;
+    } catch (IOException e) {
+      replayButton.setSelected(false);
+      stopReplay();
+      showError("Couldn't play the recording", e);
+      return snapshots.acquire();
+    }
+  }
 
   /**
-   * Adds particles for render on the window.
+   * Saves the particles, settings and gravity to a file the user picks.
    */
-  public void addGravityParticle(GravityParticle particle) {
+  @FXML
+  protected void saveScene() {
+    File file = chooseFile("Scenes", "scene", true);
+    if (file == null) {
+      return;
+    }
+    WorldSnapshot[] snapshot = new WorldSnapshot[1];
+    simulation.read(world -> snapshot[0] = WorldSnapshot.capture(world));
+    saveControls(snapshot[0]);
+    try {
+      snapshot[0].write(file.toPath());
+    } catch (IOException e) {
+      showError("Couldn't save the scene", e);
+    }
+  }
+
+  /**
+   * Replaces the particles, settings and gravity with ones saved in a file the user picks.
+   */
+  @FXML
+  protected void loadScene() {
+    File file = chooseFile("Scenes", "scene", false);
+    if (file == null) {
+      return;
+    }
+    WorldSnapshot snapshot;
+    try {
+      snapshot = WorldSnapshot.read(file.toPath());
+    } catch (IOException e) {
+      showError("Couldn't load the scene", e);
+      return;
+    }
+    replayButton.setSelected(false);
+    stopReplay();
+    loadControls(snapshot);
+    simulation.edit(snapshot::restore);
+  }
+
+  /**
+   * Tells the user that something they asked for failed, and why. Doesn't wait for them to close
+   * it, since it can be shown while a frame is being drawn.
+   *
+   * @param failure what failed, like "Couldn't save the scene"
+   */
+  private void showError(String failure, IOException e) {
+    Alert alert = new Alert(AlertType.ERROR,
+        e.getMessage() != null ? e.getMessage() : e.toString());
+    alert.initOwner(root.getScene().getWindow());
+    alert.setHeaderText(failure);
+    alert.show();
+  }
+
+  private File chooseFile(String description, String extension, boolean save) {
+    FileChooser chooser = new FileChooser();
+    chooser.getExtensionFilters()
+        .add(new FileChooser.ExtensionFilter(description, "*." + extension));
+    if (save) {
+      chooser.setInitialFileName("untitled." + extension);
+      return chooser.showSaveDialog(root.getScene().getWindow());
+    }
+    return chooser.showOpenDialog(root.getScene().getWindow());
+  }
+
+  private Group getParticleGroup() {
     //Through DirectionController.fxml, this index will not change
-    Group particleGroup = (Group) root.getChildren().get(0);
+    return (Group) root.getChildren().get(0);
+  }
 
-    particleGroup.getChildren().add(particle);
+  /**
+   * Adds a particle. It is drawn on the window once the simulation thread has added it.
+   *
+   * @param x X value that the particle will start at
+   * @param y Y value that the particle will start at
+   * @param radius size of the particle
+   * @param edgeHandling how the particle will behave when hitting an edge
+   * @param doCollisions whether or not to have it collide with other particles
+   * @param initialVelocity the starting velocity of the particle
+   */
+  protected void addGravityParticle(double x, double y, double radius,
+      EdgeHandling edgeHandling, boolean doCollisions, Vector initialVelocity) {
+    double vx = initialVelocity.getxComponent();
+    double vy = initialVelocity.getyComponent();
+    editParticles(() -> particles.add(x, y, vx, vy, radius, edgeHandling, doCollisions));
+  }
+
+  /**
+   * Adds a whole pattern of particles at rest in one change, instead of one change each.
+   *
+   * @param pattern the shape to add them in
+   * @param count how many particles to add
+   * @param radius size of the particles
+   * @param edgeHandling how the particles will behave when hitting an edge
+   * @param doCollisions whether or not to have them collide with other particles
+   */
+  protected void spawnParticles(SpawnPattern pattern, int count, double radius,
+      EdgeHandling edgeHandling, boolean doCollisions) {
+    editParticles(() -> pattern.spawn(particles, count, WINDOW_WIDTH, WINDOW_HEIGHT, radius,
+        edgeHandling, doCollisions, spawnRandom));
+  }
+
+  /**
+   * Adds an obstacle for the particles to bounce off of.
+   *
+   * @param obstacle the shape of the obstacle. Only the simulation thread touches it from now on
+   * @param view what to draw it with, centered on (0, 0)
+   */
+  protected void addObstacle(HitBox obstacle, Shape view) {
+    view.setLayoutX(obstacle.getCenterX());
+    view.setLayoutY(obstacle.getCenterY());
+    view.setMouseTransparent(true);
+    //Over the particles, under the controls
+    root.getChildren().add(1, view);
+    obstacles.add(obstacle);
+    obstacleViews.add(view);
+    editParticles(() -> world.getObstacles().add(obstacle));
+  }
+
+  /**
+   * Moves an obstacle, only baking the area around where it was and where it goes again.
+   */
+  protected void moveObstacle(HitBox obstacle, double x, double y) {
+    int index = obstacles.indexOf(obstacle);
+    if (index < 0) {
+      return;
+    }
+    obstacleViews.get(index).setLayoutX(x);
+    obstacleViews.get(index).setLayoutY(y);
+    editParticles(() -> {
+      obstacle.setCenterX(x);
+      obstacle.setCenterY(y);
+      world.getObstacles().update(obstacle);
+      world.wakeAll();
+    });
+  }
+
+  /**
+   * @return the obstacle with the center closest to (x, y), or null if there are none
+   */
+  protected HitBox closestObstacle(double x, double y) {
+    HitBox closest = null;
+    double closestDistance = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < obstacles.size(); i++) {
+      Shape view = obstacleViews.get(i);
+      double distance = Math.hypot(x - view.getLayoutX(), y - view.getLayoutY());
+      if (distance < closestDistance) {
+        closest = obstacles.get(i);
+        closestDistance = distance;
+      }
+    }
+    return closest;
+  }
+
+  @FXML
+  public void clearObstacles() {
+    root.getChildren().removeAll(obstacleViews);
+    obstacles.clear();
+    obstacleViews.clear();
+    editParticles(() -> {
+      world.getObstacles().clear();
+      world.wakeAll();
+    });
   }
 
   /**
@@ -89,9 +631,6 @@ public abstract class Controller {
    */
   @FXML
   public void clearParticles() {
-    //Through DirectionController.fxml, this index will not change
-    particles.clear();
-    Group particleGroup = (Group) root.getChildren().get(0);
-    particleGroup.getChildren().clear();
+    editParticles(particles::clear);
   }
 }
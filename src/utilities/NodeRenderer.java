@@ -0,0 +1,52 @@
+package utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.collections.ObservableList;
+import javafx.scene.Group;
+import javafx.scene.Node;
+
+/**
+ * Draws each particle as its own GravityParticle node. Nodes left over when particles are cleared
+ * are kept for the next particles added, instead of being made again.
+ */
+public class NodeRenderer implements ParticleRenderer {
+
+  private final Group particleGroup;
+  private final List<GravityParticle> pool = new ArrayList<>();
+  private long colorSequence = -1;
+
+  public NodeRenderer(Group particleGroup) {
+    this.particleGroup = particleGroup;
+  }
+
+  /**
+   * Copies the particles' state onto their Circles, adding Circles for new particles and removing
+   * the ones left over from cleared particles.
+   */
+  @Override
+  public void render(ParticleSnapshot snapshot, double alpha) {
+    ObservableList<Node> views = particleGroup.getChildren();
+
+    int count = snapshot.getCount();
+    //Only the new Circles need their fill set unless the colors changed
+    int colorFrom = snapshot.getColorSequence() != colorSequence ? 0 : views.size();
+    colorSequence = snapshot.getColorSequence();
+    if (views.size() > count) {
+      for (int i = count; i < views.size(); i++) {
+        pool.add((GravityParticle) views.get(i));
+      }
+      views.remove(count, views.size());
+    } else if (views.size() < count) {
+      GravityParticle[] added = new GravityParticle[count - views.size()];
+      for (int i = 0; i < added.length; i++) {
+        added[i] = pool.isEmpty() ? new GravityParticle() : pool.remove(pool.size() - 1);
+      }
+      views.addAll(added);
+    }
+
+    for (int i = 0; i < count; i++) {
+      ((GravityParticle) views.get(i)).sync(snapshot, i, alpha, i >= colorFrom);
+    }
+  }
+}
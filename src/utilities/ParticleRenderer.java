@@ -0,0 +1,15 @@
+package utilities;
+
+/**
+ * Draws the particles in a ParticleSnapshot onto the window.
+ */
+public interface ParticleRenderer {
+
+  /**
+   * Draws every particle in a snapshot.
+   *
+   * @param snapshot the particles to draw
+   * @param alpha how far between the snapshot's previous and current positions to draw them
+   */
+  void render(ParticleSnapshot snapshot, double alpha);
+}
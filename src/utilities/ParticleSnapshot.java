@@ -0,0 +1,150 @@
+package utilities;
+
+import simulation.ParticleStore;
+
+/**
+ * A copy of everything needed to draw the particles, taken by the simulation thread after it
+ * steps. It also holds the positions from the snapshot before it, so the renderer can draw the
+ * particles somewhere between the two.
+ */
+public class ParticleSnapshot {
+
+  //Anything that moved further than this between two snapshots wrapped around the window
+  private static final double MAX_INTERPOLATED_DISTANCE = 200;
+
+  private double[] x = new double[0];
+  private double[] y = new double[0];
+  private double[] previousX = new double[0];
+  private double[] previousY = new double[0];
+  private double[] radius = new double[0];
+  private int[] colorIndex = new int[0];
+  private int count;
+  private volatile long sequence;
+  private long colorSequence;
+  private long publishedNanos;
+  private long spanNanos;
+
+  /**
+   * Copies the particles out of store. Must be called while nothing else is changing store.
+   *
+   * @param store the particles to copy
+   * @param lastX the x values in the last snapshot
+   * @param lastY the y values in the last snapshot
+   * @param lastColors the colors in the last snapshot, to keep them, or null to work them out
+   * @param lastCount how many of the particles were in the last snapshot
+   * @param maxVelocity the speed that gets the last color
+   * @param spanNanos how much simulated time passed since the last snapshot
+   * @param sequence a number that is larger for every new snapshot
+   * @param colorSequence a number that is larger for every snapshot with new colors
+   */
+  void copyFrom(ParticleStore store, double[] lastX, double[] lastY, int[] lastColors,
+      int lastCount, double maxVelocity, long spanNanos, long sequence, long colorSequence) {
+    count = store.size();
+    if (x.length < count) {
+      int capacity = Math.max(count, x.length * 2);
+      x = new double[capacity];
+      y = new double[capacity];
+      previousX = new double[capacity];
+      previousY = new double[capacity];
+      radius = new double[capacity];
+      colorIndex = new int[capacity];
+    }
+    System.arraycopy(store.getX(), 0, x, 0, count);
+    System.arraycopy(store.getY(), 0, y, 0, count);
+    System.arraycopy(store.getRadius(), 0, radius, 0, count);
+
+    //Particles that weren't in the last snapshot just appear where they are
+    int kept = Math.min(lastCount, count);
+    System.arraycopy(lastX, 0, previousX, 0, kept);
+    System.arraycopy(lastY, 0, previousY, 0, kept);
+    System.arraycopy(x, kept, previousX, kept, count - kept);
+    System.arraycopy(y, kept, previousY, kept, count - kept);
+
+    int colored = 0;
+    if (lastColors != null) {
+      System.arraycopy(lastColors, 0, colorIndex, 0, kept);
+      colored = kept;
+    }
+    for (int i = colored; i < count; i++) {
+      colorIndex[i] = SpeedPalette.colorIndex(store.speed(i), maxVelocity);
+    }
+
+    this.colorSequence = colorSequence;
+    this.spanNanos = spanNanos;
+    this.publishedNanos = System.nanoTime();
+    this.sequence = sequence;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * @return a number that only changes when the colors of the particles that were already in the
+   *     last snapshot do
+   */
+  public long getColorSequence() {
+    return colorSequence;
+  }
+
+  /**
+   * @param nowNanos the current time, from System.nanoTime
+   * @return how far to draw the particles between the last snapshot (0) and this one (1)
+   */
+  public double interpolationAlpha(long nowNanos) {
+    if (spanNanos <= 0) {
+      return 1;
+    }
+    return Math.max(0, Math.min(1, (double) (nowNanos - publishedNanos) / spanNanos));
+  }
+
+  /**
+   * @param alpha from interpolationAlpha
+   * @return the x value to draw a particle at
+   */
+  public double getX(int index, double alpha) {
+    return interpolate(previousX[index], x[index], alpha);
+  }
+
+  /**
+   * @param alpha from interpolationAlpha
+   * @return the y value to draw a particle at
+   */
+  public double getY(int index, double alpha) {
+    return interpolate(previousY[index], y[index], alpha);
+  }
+
+  public double getRadius(int index) {
+    return radius[index];
+  }
+
+  /**
+   * @return the index in SpeedPalette of the particle's color
+   */
+  public int getColorIndex(int index) {
+    return colorIndex[index];
+  }
+
+  double[] getX() {
+    return x;
+  }
+
+  double[] getY() {
+    return y;
+  }
+
+  int[] getColorIndices() {
+    return colorIndex;
+  }
+
+  private static double interpolate(double previous, double current, double alpha) {
+    if (Math.abs(current - previous) > MAX_INTERPOLATED_DISTANCE) {
+      return current;
+    }
+    return previous + (current - previous) * alpha;
+  }
+}
@@ -2,14 +2,22 @@ package utilities;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.layout.AnchorPane;
 
+/**
+ * Switches the Scene between screens. Each screen's Controller has a world of its own, which is
+ * suspended while the screen is hidden and resumed, just as it was left, when it's shown again.
+ */
 public class SceneController {
 
   private HashMap<String, AnchorPane> screenMap = new HashMap<>();
   private HashMap<String, Controller> controllerMap = new HashMap<>();
+  //The Controller of every pane loaded from FXML, until it's added as a screen
+  private Map<AnchorPane, Controller> paneControllers = new IdentityHashMap<>();
   private Scene main;
   private Controller currentController;
 
@@ -23,21 +31,58 @@ public class SceneController {
    */
   public void addScreen(String name, AnchorPane pane) {
     screenMap.put(name, pane);
+    Controller controller = paneControllers.remove(pane);
+    if (controller != null) {
+      controllerMap.put(name, controller);
+    }
   }
 
   public void removeScreen(String name) {
     screenMap.remove(name);
+    Controller controller = controllerMap.remove(name);
+    if (controller != null) {
+      controller.suspend();
+      if (controller == currentController) {
+        currentController = null;
+      }
+    }
   }
 
+  /**
+   * Shows a screen, suspending the world of the one that was showing and resuming its own.
+   * Neither is reset.
+   */
   public void activate(String name) {
+    Controller next = controllerMap.get(name);
+    if (currentController != null && currentController != next) {
+      currentController.suspend();
+    }
     main.setRoot(screenMap.get(name));
-    currentController = controllerMap.get(name);
+    currentController = next;
+    if (next != null) {
+      next.resume();
+    }
+  }
+
+  /**
+   * Keeps a screen's world running while it's hidden, or suspends it with the screen.
+   */
+  public void setRunsInBackground(String name, boolean runsInBackground) {
+    Controller controller = controllerMap.get(name);
+    if (controller != null) {
+      controller.setRunsInBackground(runsInBackground);
+    }
   }
 
   public AnchorPane getPanefromFXML(String fileName) throws IOException {
     FXMLLoader loader = new FXMLLoader(getClass().getResource(fileName));
-    controllerMap.put(fileName, loader.getController());
-    return loader.load();
+    AnchorPane pane = loader.load();
+    //The Controller is only made while loading
+    Controller controller = loader.getController();
+    if (controller != null) {
+      paneControllers.put(pane, controller);
+    }
+    return pane;
   }
 
   public Controller getCurrentController() {
@@ -0,0 +1,80 @@
+package utilities;
+
+import java.util.concurrent.atomic.AtomicReference;
+import simulation.ParticleStore;
+
+/**
+ * Hands ParticleSnapshots from the simulation thread to the JavaFX thread without locking. There
+ * are three snapshots: the one being written, the one being drawn, and the newest finished one,
+ * which the two threads swap with theirs.
+ */
+public class SnapshotBuffer {
+
+  private final AtomicReference<ParticleSnapshot> ready =
+      new AtomicReference<>(new ParticleSnapshot());
+  private ParticleSnapshot back = new ParticleSnapshot();
+  private ParticleSnapshot front = new ParticleSnapshot();
+
+  private volatile int colorInterval = 1;
+
+  //Only touched by the simulation thread
+  private double[] lastX = new double[0];
+  private double[] lastY = new double[0];
+  private int[] lastColors = new int[0];
+  private int lastCount;
+  private int publishesSinceColors;
+  private long colorSequence;
+  private long lastGeneration = -1;
+  private long sequence;
+
+  /**
+   * Copies store into a snapshot and makes it the newest one. Only call this from the simulation
+   * thread, while nothing else is changing store.
+   *
+   * @param spanNanos how much simulated time passed since the last call
+   */
+  public void publish(ParticleStore store, double maxVelocity, long spanNanos) {
+    //Don't slide particles from where cleared particles used to be
+    int kept = store.getGeneration() == lastGeneration ? lastCount : 0;
+    boolean recolor = ++publishesSinceColors >= colorInterval || kept == 0;
+    if (recolor) {
+      publishesSinceColors = 0;
+      colorSequence++;
+    }
+    back.copyFrom(store, lastX, lastY, recolor ? null : lastColors, kept, maxVelocity,
+        spanNanos, ++sequence, colorSequence);
+
+    lastCount = store.size();
+    lastGeneration = store.getGeneration();
+    if (lastX.length < lastCount) {
+      lastX = new double[back.getX().length];
+      lastY = new double[back.getY().length];
+      lastColors = new int[back.getX().length];
+    }
+    System.arraycopy(back.getX(), 0, lastX, 0, lastCount);
+    System.arraycopy(back.getY(), 0, lastY, 0, lastCount);
+    System.arraycopy(back.getColorIndices(), 0, lastColors, 0, lastCount);
+
+    back = ready.getAndSet(back);
+  }
+
+  /**
+   * Only works out the particles' colors every colorInterval snapshots. The ones between keep the
+   * colors from before, except for new particles.
+   */
+  public void setColorInterval(int colorInterval) {
+    this.colorInterval = colorInterval;
+  }
+
+  /**
+   * Only call this from the JavaFX thread.
+   *
+   * @return the newest snapshot. It isn't touched by the simulation thread until the next call
+   */
+  public ParticleSnapshot acquire() {
+    if (ready.get().getSequence() > front.getSequence()) {
+      front = ready.getAndSet(front);
+    }
+    return front;
+  }
+}
@@ -0,0 +1,37 @@
+package utilities;
+
+import javafx.scene.paint.Color;
+
+/**
+ * The colors that represent a particle's speed, worked out once instead of every frame.
+ */
+public final class SpeedPalette {
+
+  private static final int SIZE = 256;
+  private static final Color[] COLORS = new Color[SIZE];
+
+  static {
+    for (int i = 0; i < SIZE; i++) {
+      //Find the hue out of 300 degrees to prevent repeats, and offset it
+      double h = ((double) i / (SIZE - 1)) * -300 - 60;
+      COLORS[i] = Color.hsb(h, 1, 1);
+    }
+  }
+
+  private SpeedPalette() {
+  }
+
+  /**
+   * @param speed the speed of a particle
+   * @param maxVelocity the speed that gets the last color
+   * @return the index of the color that represents the speed
+   */
+  public static int colorIndex(double speed, double maxVelocity) {
+    int index = (int) (speed / maxVelocity * (SIZE - 1) + 0.5);
+    return Math.max(0, Math.min(SIZE - 1, index));
+  }
+
+  public static Color getColor(int index) {
+    return COLORS[index];
+  }
+}
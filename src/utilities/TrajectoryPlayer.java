@@ -0,0 +1,75 @@
+package utilities;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import simulation.ParticleStore;
+import simulation.TrajectoryReader;
+
+/**
+ * Plays a recorded trajectory back in real time, one frame per tick, straight from the file. No
+ * physics are run. Only use it from the JavaFX thread.
+ */
+public class TrajectoryPlayer implements AutoCloseable {
+
+  private final TrajectoryReader reader;
+  private final long tickNanos;
+  private final ParticleStore particles = new ParticleStore();
+  private final SnapshotBuffer snapshots = new SnapshotBuffer();
+
+  private int frame = -1;
+  //The frame shown at startNanos, which the frame being shown now is counted from
+  private int startFrame;
+  private long startNanos;
+
+  /**
+   * @param tickNanos how long to show each frame
+   */
+  public TrajectoryPlayer(Path path, long tickNanos) throws IOException {
+    this.reader = new TrajectoryReader(path);
+    this.tickNanos = tickNanos;
+    this.startNanos = System.nanoTime();
+  }
+
+  public int getFrameCount() {
+    return reader.getFrameCount();
+  }
+
+  /**
+   * @return the frame being shown
+   */
+  public int getFrame() {
+    return frame;
+  }
+
+  /**
+   * Jumps to a frame and plays on from there.
+   */
+  public void seek(int frame, long nowNanos) {
+    startFrame = Math.max(0, Math.min(frame, getFrameCount() - 1));
+    startNanos = nowNanos;
+  }
+
+  /**
+   * Reads the frame that should be showing now, if it isn't already.
+   *
+   * @param nowNanos the current time, from System.nanoTime
+   * @return the snapshot to draw
+   */
+  public ParticleSnapshot snapshotAt(long nowNanos) throws IOException {
+    long elapsedFrames = (nowNanos - startNanos) / tickNanos;
+    int target = (int) Math.min(startFrame + elapsedFrames, getFrameCount() - 1);
+    if (target >= 0 && target != frame) {
+      //Slide forward from the last frame, but not back from a frame after this one
+      long spanNanos = target > frame ? (target - frame) * tickNanos : 0;
+      reader.readFrame(target, particles);
+      snapshots.publish(particles, reader.getFrameMaxVelocity(), spanNanos);
+      frame = target;
+    }
+    return snapshots.acquire();
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
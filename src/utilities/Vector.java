@@ -21,6 +21,13 @@ public class Vector {
     this.angle = Math.atan2(yComponent, xComponent);
   }
 
+  private Vector(double magnitude, double angle, double xComponent, double yComponent) {
+    this.magnitude = magnitude;
+    this.angle = angle;
+    this.xComponent = xComponent;
+    this.yComponent = yComponent;
+  }
+
   /**
    * Create a vector from an x and y component
    *
@@ -29,9 +36,8 @@ public class Vector {
    * @return a Vector {@literal <x, y>}
    */
   public static Vector vectorFromXandY(double x, double y) {
-    double magnitude = Math.sqrt(Math.pow(x, 2) + Math.pow(y, 2));
-    double angle = Math.atan2(y, x);
-    return new Vector(magnitude, angle);
+    //Keep the components as they are instead of rebuilding them from the angle
+    return new Vector(Math.sqrt(x * x + y * y), Math.atan2(y, x), x, y);
   }
 
   /**